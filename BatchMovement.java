@@ -0,0 +1,108 @@
+import java.util.List;
+
+/**
+ * Move a company's taxis as one actor, working out every moving taxi's next
+ * location together with a {@link MovementKernel} instead of one taxi at a
+ * time.
+ * <p>
+ * Each step, the positions and targets of the taxis heading somewhere are
+ * gathered into coordinate arrays and moved in one pass. The taxis then act
+ * in fleet order on their new locations, so arriving at a pickup or a
+ * destination is handled by the company exactly as when each taxi acts on
+ * its own. A taxi whose target or location was changed earlier in the step,
+ * by another taxi's arrival, is moved on its own instead, so the outcome of
+ * a step never differs from that of the taxis acting one by one.
+ */
+public class BatchMovement implements Actor {
+    private static final int NONE = -1;
+
+    private final List<Vehicle> vehicles;
+    // Each vehicle's target and location when the step's moves were worked
+    // out, and its place in the batch, or NONE if it was not moving.
+    private Location[] targets;
+    private Location[] locations;
+    private int[] slots;
+    // The moving vehicles' coordinates, their targets' coordinates and
+    // whether each has arrived, in the order they were gathered.
+    private int[] x;
+    private int[] y;
+    private int[] targetX;
+    private int[] targetY;
+    private boolean[] arrived;
+
+    /**
+     * Create a batch movement stage for a fleet.
+     *
+     * @param vehicles The vehicles to move, in the order they act (must not be null).
+     *                 The list is read afresh every step.
+     * @throws NullPointerException if vehicles is null.
+     */
+    public BatchMovement(List<Vehicle> vehicles) {
+        if (vehicles == null) {
+            throw new NullPointerException("Vehicles must not be null.");
+        }
+        this.vehicles = vehicles;
+        allocate(vehicles.size());
+    }
+
+    /**
+     * Move every vehicle one step, as each of them acting in turn would.
+     */
+    public void act() {
+        int size = vehicles.size();
+        if (size > slots.length) {
+            allocate(size);
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            Vehicle vehicle = vehicles.get(i);
+            Location target = vehicle.getTargetLocation();
+            Location location = vehicle.getLocation();
+            targets[i] = target;
+            locations[i] = location;
+            if (target != null && vehicle instanceof Taxi) {
+                slots[i] = count;
+                x[count] = location.getX();
+                y[count] = location.getY();
+                targetX[count] = target.getX();
+                targetY[count] = target.getY();
+                count++;
+            } else {
+                slots[i] = NONE;
+            }
+        }
+
+        MovementKernel.move(x, y, targetX, targetY, arrived, count);
+
+        for (int i = 0; i < size; i++) {
+            Vehicle vehicle = vehicles.get(i);
+            Location target = vehicle.getTargetLocation();
+            if (!(vehicle instanceof Taxi taxi)
+                    || target != targets[i] || vehicle.getLocation() != locations[i]) {
+                vehicle.act();
+            } else if (slots[i] == NONE) {
+                taxi.advance(null, null, false);
+            } else {
+                int slot = slots[i];
+                // Locations are shared immutable values, so a new one is
+                // made for each move, as Location.nextLocation does.
+                Location next = arrived[slot] ? target : new Location(x[slot], y[slot]);
+                taxi.advance(target, next, arrived[slot]);
+            }
+            // Don't keep locations alive past the step.
+            targets[i] = null;
+            locations[i] = null;
+        }
+    }
+
+    private void allocate(int capacity) {
+        targets = new Location[capacity];
+        locations = new Location[capacity];
+        slots = new int[capacity];
+        x = new int[capacity];
+        y = new int[capacity];
+        targetX = new int[capacity];
+        targetY = new int[capacity];
+        arrived = new boolean[capacity];
+    }
+}
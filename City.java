@@ -1,14 +1,29 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class City {
-    private List<Item> items;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Kept in the order they were added, in an array so that publishing a
+    // snapshot walks them without chasing links. A removed item leaves a
+    // null gap until the gaps outnumber the items and they are closed up.
+    private Item[] items;
+    private int itemEnd;
+    private int itemCount;
+    // Each item's index in items, for constant-time lookup.
+    private final Map<Item, Integer> itemIndices;
     private int width;
     private int height;
 
-    private static final int DEFAULT_WIDTH = 35;
-    private static final int DEFAULT_HEIGHT = 35;
+    // The latest published snapshot, read by observers on any thread.
+    private volatile CitySnapshot snapshot;
+
+    public static final int DEFAULT_WIDTH = 35;
+    public static final int DEFAULT_HEIGHT = 35;
 
     /**
      * Constructor for objects of class City
@@ -29,7 +44,9 @@ public class City {
         }
         this.width = width;
         this.height = height;
-        items = new LinkedList<>();
+        items = new Item[INITIAL_CAPACITY];
+        itemIndices = new IdentityHashMap<>();
+        snapshot = CitySnapshot.empty(width, height);
     }
 
     /**
@@ -43,7 +60,22 @@ public class City {
      * @return An iterator over the items.
      */
     public Iterator<Item> getItems() {
-        return items.iterator();
+        return new Iterator<>() {
+            private int next = skipGaps(0);
+
+            public boolean hasNext() {
+                return next < itemEnd;
+            }
+
+            public Item next() {
+                if (next >= itemEnd) {
+                    throw new NoSuchElementException();
+                }
+                Item item = items[next];
+                next = skipGaps(next + 1);
+                return item;
+            }
+        };
     }
 
     /**
@@ -52,11 +84,35 @@ public class City {
      * @param item The item to be added.
      */
     public void addItem(Item item) {
-        if (items.contains(item)) {
+        if (itemIndices.containsKey(item)) {
             throw new IllegalArgumentException(
                     item + " already recorded in the city.");
         }
-        items.add(item);
+        if (itemEnd == items.length) {
+            if (itemCount < itemEnd / 2) {
+                closeGaps();
+            } else {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+        }
+        items[itemEnd] = item;
+        itemIndices.put(item, itemEnd);
+        itemEnd++;
+        itemCount++;
+    }
+
+    /**
+     * Add many items to the city's collection in one pass, such as a
+     * whole fleet.
+     *
+     * @param newItems The items to be added.
+     * @throws IllegalArgumentException if any item is already in the city;
+     *                                  the items before it are added.
+     */
+    public void addItems(Collection<? extends Item> newItems) {
+        for (Item item : newItems) {
+            addItem(item);
+        }
     }
 
     /**
@@ -65,10 +121,83 @@ public class City {
      * @param item The item to be removed.
      */
     public void removeItem(Item item) {
-        if (!items.remove(item)) {
+        Integer index = itemIndices.remove(item);
+        if (index == null) {
             throw new IllegalArgumentException(
                     item + " is not in the city.");
         }
+        items[index] = null;
+        itemCount--;
+        if (itemCount < (itemEnd - itemCount) && itemEnd > INITIAL_CAPACITY) {
+            closeGaps();
+        }
+    }
+
+    /**
+     * Move the items down over the gaps left by removed ones, keeping
+     * their order.
+     */
+    private void closeGaps() {
+        int to = 0;
+        for (int from = 0; from < itemEnd; from++) {
+            Item item = items[from];
+            if (item != null) {
+                if (to != from) {
+                    items[to] = item;
+                    itemIndices.put(item, to);
+                }
+                to++;
+            }
+        }
+        Arrays.fill(items, to, itemEnd, null);
+        itemEnd = to;
+    }
+
+    /**
+     * @param index An index into items.
+     * @return The index of the first item at or after it, or itemEnd if none.
+     */
+    private int skipGaps(int index) {
+        while (index < itemEnd && items[index] == null) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Publish a snapshot of the items' positions and types as they are now.
+     * Should be called by the simulation thread between steps; a
+     * {@link Simulation} does so after every step.
+     *
+     * @return The snapshot published.
+     */
+    public CitySnapshot publishSnapshot() {
+        int[] xs = new int[itemCount];
+        int[] ys = new int[itemCount];
+        byte[] types = new byte[itemCount];
+        int i = 0;
+        for (int index = 0; index < itemEnd; index++) {
+            Item item = items[index];
+            if (item != null) {
+                Location location = item.getLocation();
+                xs[i] = location.getX();
+                ys[i] = location.getY();
+                types[i] = item.getType().getCode();
+                i++;
+            }
+        }
+        CitySnapshot published = new CitySnapshot(snapshot.getEpoch() + 1, width, height, xs, ys, types);
+        snapshot = published;
+        return published;
+    }
+
+    /**
+     * Get the latest published snapshot. Safe to call from any thread.
+     *
+     * @return The latest snapshot, or an empty one if none has been published.
+     */
+    public CitySnapshot getSnapshot() {
+        return snapshot;
     }
 
     /**
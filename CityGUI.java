@@ -1,6 +1,11 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.Iterator;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Objects;
 
 public class CityGUI extends JFrame implements Actor {
     // GUI dimensions
@@ -8,12 +13,14 @@ public class CityGUI extends JFrame implements Actor {
     public static final int CITY_VIEW_HEIGHT = 600;
 
     private final City city;
-    private final TaxiCompany company;
-    private final PassengerSource passengerSource;
     private final CityView cityView;
+    // The image drawn for each type of item, by the type's ordinal.
+    private final Image[] typeImages;
 
-    // Label for displaying simulation statistics
+    // Label for displaying simulation statistics, and the figures it shows,
+    // pushed by the company and passenger source as they change.
     private final JLabel statsLabel;
+    private final StatsBoard stats;
 
     /**
      * Create the CityGUI window and display the city state.
@@ -28,11 +35,16 @@ public class CityGUI extends JFrame implements Actor {
         if (passengerSource == null) throw new NullPointerException("PassengerSource cannot be null");
 
         this.city = city;
-        this.company = company;
-        this.passengerSource = passengerSource;
 
         cityView = new CityView(city.getWidth(), city.getHeight());
-        statsLabel = new JLabel("Pickups: 0  |  Dropoffs: 0");
+        ItemType[] types = ItemType.values();
+        typeImages = new Image[types.length];
+        for (ItemType type : types) {
+            typeImages[type.ordinal()] = new ImageIcon(Objects.requireNonNull(
+                    CityGUI.class.getResource(type.getImageName()))).getImage();
+        }
+        stats = StatsBoard.follow(company, passengerSource);
+        statsLabel = new JLabel(formatStats());
         statsLabel.setFont(new Font("Monospaced", Font.BOLD, 7));
 
         setTitle("Taxiville");
@@ -43,40 +55,96 @@ public class CityGUI extends JFrame implements Actor {
         setVisible(true);
     }
 
+    /**
+     * Let the keyboard control the pace of the simulation:
+     * space pauses and resumes, '.' runs a single step, '+' and '-'
+     * double and halve the speed, '1' returns to real time and
+     * 'u' runs at unlimited speed.
+     *
+     * @param pacer The pacer of the simulation being displayed.
+     */
+    public void bindControls(Pacer pacer) {
+        if (pacer == null) throw new NullPointerException("Pacer cannot be null");
+
+        addKeyListener(new KeyAdapter() {
+            public void keyTyped(KeyEvent e) {
+                switch (e.getKeyChar()) {
+                    case ' ' -> {
+                        if (pacer.isPaused()) {
+                            pacer.resume();
+                        } else {
+                            pacer.pause();
+                        }
+                    }
+                    case '.' -> pacer.singleStep();
+                    case '+' -> pacer.setSpeed(pacer.getSpeed() * 2);
+                    case '-' -> pacer.setSpeed(pacer.getSpeed() / 2);
+                    case '1' -> pacer.setSpeed(1);
+                    case 'u' -> pacer.setSpeed(Pacer.UNLIMITED);
+                }
+            }
+        });
+    }
+
     /**
      * Update the GUI with the current city state and statistics.
      */
     public void act() {
+        RenderFrameEvent event = new RenderFrameEvent();
+        event.begin();
         cityView.preparePaint();
-        Iterator<Item> items = city.getItems();
 
-        while (items.hasNext()) {
-            Item item = items.next();
-            if (item instanceof DrawableItem drawable) {
-                Location location = item.getLocation();
-                cityView.drawImage(location.getX(), location.getY(), drawable.getImage());
+        // Too many items to draw one by one: show their density instead.
+        CitySnapshot snapshot = city.getSnapshot();
+        boolean densityMap = cityView.countItems(snapshot);
+        if (densityMap) {
+            cityView.drawDensity();
+        } else {
+            for (int i = 0; i < snapshot.size(); i++) {
+                cityView.drawImage(snapshot.getX(i), snapshot.getY(i), typeImages[snapshot.getType(i).ordinal()]);
             }
         }
 
-        // Update statistics
-        int pickups = company.getTotalPickups();
-        int dropoffs = company.getTotalDropoffs();
-        int missed = passengerSource.getMissedPickups();
-        int created = passengerSource.getTotalPassengersCreated();
-        long activeTaxis = company.getVehicles().stream().filter(v -> !v.isFree()).count();
-
-        statsLabel.setText(String.format(
-                "Passengers Collected: %d  |  Passengers Dropped Off: %d  |  Passengers Missed: %d  |  Jobs Created: %d  |  Active Taxis: %d",
-                pickups, dropoffs, missed, created, activeTaxis));
+        // Update statistics, only if they have changed since the last frame
+        if (stats.takeChanged()) {
+            statsLabel.setText(formatStats());
+        }
 
         cityView.repaint();
+        if (event.shouldCommit()) {
+            event.items = cityView.getItemCount();
+            event.densityMap = densityMap;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return The text of the statistics label.
+     */
+    private String formatStats() {
+        return String.format(
+                "Passengers Collected: %d  |  Passengers Dropped Off: %d  |  Passengers Missed: %d  |  Jobs Created: %d  |  Active Taxis: %d",
+                stats.get(Statistic.PICKUPS), stats.get(Statistic.DROPOFFS), stats.get(Statistic.MISSED),
+                stats.get(Statistic.CREATED), stats.get(Statistic.ACTIVE_TAXIS));
     }
 
     /**
      * Component for graphically displaying the city grid.
+     * <p>
+     * Items are drawn as images while each cell is large enough on screen
+     * and holds only a few items. Otherwise the items are counted into one
+     * bin per screen pixel (or per cell, if cells are larger) and drawn as
+     * a colour-mapped density map, written pixel by pixel into a single
+     * image, so the cost of a frame depends on the view size rather than
+     * the number of items.
      */
     private class CityView extends JPanel {
         private final int VIEW_SCALING_FACTOR = 6;
+        // Level of detail: the smallest cell, in pixels, and the most items
+        // in any cell for which images are drawn.
+        private final int MIN_SPRITE_CELL_PIXELS = 4;
+        private final int MAX_SPRITES_PER_CELL = 4;
+        private final int[] DENSITY_PALETTE = createPalette();
 
         private int cityWidth, cityHeight;
         private int xScale, yScale;
@@ -84,6 +152,15 @@ public class CityGUI extends JFrame implements Actor {
         private Graphics g;
         private Image cityImage;
 
+        // Density map: item counts per bin, and the bin of each pixel.
+        private int binsX, binsY;
+        private int[] binCounts;
+        private int[] binOfPixelX, binOfPixelY;
+        private int maxBinCount;
+        private int itemCount;
+        private BufferedImage densityImage;
+        private int[] densityPixels;
+
         /**
          * Create a new CityView panel.
          *
@@ -95,6 +172,7 @@ public class CityGUI extends JFrame implements Actor {
             cityHeight = height;
             setBackground(Color.white);
             size = new Dimension(0, 0);
+            prepareDensityMap();
         }
 
         /**
@@ -119,6 +197,8 @@ public class CityGUI extends JFrame implements Actor {
 
                 yScale = size.height / cityHeight;
                 if (yScale < 1) yScale = VIEW_SCALING_FACTOR;
+
+                prepareDensityMap();
             }
 
             // Clear background and draw grid
@@ -145,6 +225,107 @@ public class CityGUI extends JFrame implements Actor {
                     xScale - 1, yScale - 1, this);
         }
 
+        /**
+         * Count the items in each bin of the density map and decide
+         * whether they can be drawn as images.
+         *
+         * @param snapshot A snapshot of the items in the city.
+         * @return true if the items should be drawn as a density map.
+         */
+        public boolean countItems(CitySnapshot snapshot) {
+            Arrays.fill(binCounts, 0);
+            int max = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                int binX = (int) ((long) snapshot.getX(i) * binsX / cityWidth);
+                int binY = (int) ((long) snapshot.getY(i) * binsY / cityHeight);
+                int count = ++binCounts[binY * binsX + binX];
+                if (count > max) max = count;
+            }
+            maxBinCount = max;
+            itemCount = snapshot.size();
+
+            boolean cellsTooSmall = size.width < cityWidth * MIN_SPRITE_CELL_PIXELS
+                    || size.height < cityHeight * MIN_SPRITE_CELL_PIXELS;
+            return cellsTooSmall || maxBinCount > MAX_SPRITES_PER_CELL;
+        }
+
+        /**
+         * @return The number of drawable items counted for the current frame.
+         */
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        /**
+         * Draw the counted items as a density map, shading each bin by the
+         * logarithm of its count relative to the busiest bin.
+         */
+        public void drawDensity() {
+            // Turn the counts into colours in place.
+            double scale = (DENSITY_PALETTE.length - 1) / Math.log1p(Math.max(1, maxBinCount));
+            for (int i = 0; i < binCounts.length; i++) {
+                int count = binCounts[i];
+                binCounts[i] = count == 0 ? 0xFFFFFF
+                        : DENSITY_PALETTE[Math.max(1, (int) (Math.log1p(count) * scale))];
+            }
+
+            int width = size.width;
+            for (int y = 0; y < size.height; y++) {
+                int row = binOfPixelY[y] * binsX;
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    densityPixels[offset + x] = binCounts[row + binOfPixelX[x]];
+                }
+            }
+            g.drawImage(densityImage, 0, 0, null);
+        }
+
+        /**
+         * Size the density map's bins and image to the view.
+         */
+        private void prepareDensityMap() {
+            int width = Math.max(1, size.width);
+            int height = Math.max(1, size.height);
+            binsX = Math.min(cityWidth, width);
+            binsY = Math.min(cityHeight, height);
+            binCounts = new int[binsX * binsY];
+
+            binOfPixelX = new int[width];
+            for (int x = 0; x < width; x++) {
+                binOfPixelX[x] = (int) ((long) x * binsX / width);
+            }
+            binOfPixelY = new int[height];
+            for (int y = 0; y < height; y++) {
+                binOfPixelY[y] = (int) ((long) y * binsY / height);
+            }
+
+            densityImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            densityPixels = ((DataBufferInt) densityImage.getRaster().getDataBuffer()).getData();
+        }
+
+        /**
+         * Create the colours of the density map, from pale yellow for the
+         * emptiest occupied bins through orange to dark red for the busiest.
+         *
+         * @return The colours, as RGB values.
+         */
+        private int[] createPalette() {
+            int[][] stops = {{255, 255, 178}, {253, 141, 60}, {128, 0, 38}};
+            int[] palette = new int[256];
+            for (int i = 0; i < palette.length; i++) {
+                double t = (double) i / (palette.length - 1) * (stops.length - 1);
+                int stop = Math.min((int) t, stops.length - 2);
+                double f = t - stop;
+                int rgb = 0;
+                for (int c = 0; c < 3; c++) {
+                    int value = (int) Math.round(stops[stop][c] + f * (stops[stop + 1][c] - stops[stop][c]));
+                    rgb = (rgb << 8) | value;
+                }
+                palette[i] = rgb;
+            }
+            return palette;
+        }
+
         /**
          * Paint the city view on the screen.
          *
@@ -0,0 +1,102 @@
+/**
+ * An immutable picture of the items in a city at the end of a step.
+ * <p>
+ * Positions are held in plain int arrays and each item's {@link ItemType}
+ * as a one-byte code, so a snapshot costs about nine bytes per item. Once
+ * published a snapshot is never changed, so any number of threads may read
+ * it without locking or copying.
+ */
+public class CitySnapshot {
+    private static final int[] NO_COORDINATES = new int[0];
+    private static final byte[] NO_TYPES = new byte[0];
+
+    // The number of snapshots published before this one.
+    private final long epoch;
+    private final int width;
+    private final int height;
+    private final int[] xs;
+    private final int[] ys;
+    private final byte[] types;
+
+    /**
+     * Create a snapshot, taking ownership of the arrays given.
+     *
+     * @param epoch  The snapshot's sequence number.
+     * @param width  The city's width.
+     * @param height The city's height.
+     * @param xs     The x-coordinate of each item.
+     * @param ys     The y-coordinate of each item.
+     * @param types  The code of each item's type.
+     */
+    CitySnapshot(long epoch, int width, int height, int[] xs, int[] ys, byte[] types) {
+        this.epoch = epoch;
+        this.width = width;
+        this.height = height;
+        this.xs = xs;
+        this.ys = ys;
+        this.types = types;
+    }
+
+    /**
+     * Create the empty snapshot a city starts with.
+     *
+     * @param width  The city's width.
+     * @param height The city's height.
+     * @return A snapshot with no items and epoch 0.
+     */
+    static CitySnapshot empty(int width, int height) {
+        return new CitySnapshot(0, width, height, NO_COORDINATES, NO_COORDINATES, NO_TYPES);
+    }
+
+    /**
+     * @return The snapshot's sequence number, increasing with each publication.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The city's width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The city's height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of items in the snapshot.
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * @param item The index of an item, from 0 to size() - 1.
+     * @return The item's x-coordinate.
+     */
+    public int getX(int item) {
+        return xs[item];
+    }
+
+    /**
+     * @param item The index of an item, from 0 to size() - 1.
+     * @return The item's y-coordinate.
+     */
+    public int getY(int item) {
+        return ys[item];
+    }
+
+    /**
+     * @param item The index of an item, from 0 to size() - 1.
+     * @return The item's type.
+     */
+    public ItemType getType(int item) {
+        return ItemType.fromCode(types[item]);
+    }
+}
@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event covering the search for a vehicle for one
+ * passenger, and the assignment if one was found.
+ */
+@Name("taxi.Dispatch")
+@Label("Dispatch Decision")
+@Category("Taxi Simulation")
+@Description("The search for a free vehicle for a passenger")
+public class DispatchEvent extends Event {
+    @Label("Step")
+    int step;
+
+    @Label("Vehicle Id")
+    @Description("The vehicle assigned, or -1 if none was free")
+    int vehicleId;
+
+    @Label("Pickup X")
+    int pickupX;
+
+    @Label("Pickup Y")
+    int pickupY;
+
+    @Label("Request Step")
+    int requestStep;
+
+    @Label("Priority")
+    String priority;
+}
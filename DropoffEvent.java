@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event covering a vehicle dropping off a passenger.
+ */
+@Name("taxi.Dropoff")
+@Label("Dropoff")
+@Category("Taxi Simulation")
+@Description("A vehicle dropping off a passenger at their destination")
+public class DropoffEvent extends Event {
+    @Label("Step")
+    int step;
+
+    @Label("Vehicle Id")
+    int vehicleId;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+}
@@ -0,0 +1,347 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answer "when will a taxi get here?" without simulating forward.
+ * <p>
+ * Vehicles move one cell a step, diagonals included, so a vehicle reaches
+ * its target {@link Location#distance} steps after it sets off. The service
+ * is told when a vehicle is assigned, picks up, drops off or is called off,
+ * and works out the step at which it will reach the pickup and the
+ * destination then. Only the vehicle whose target changed is updated, and
+ * the ETA of an assigned passenger is the cached step less the current one,
+ * so every query about an assigned passenger is O(1).
+ * <p>
+ * For requests not yet assigned, the service keeps each vehicle in a
+ * uniform grid at the point where it will next be free: where it stands if
+ * it is free, or its passenger's destination if it is busy, together with
+ * the step at which it gets there. A nearest-k query searches the grid in
+ * rings of cells outward from the pickup, and stops as soon as no vehicle
+ * further out could arrive sooner than the k best found. Free vehicles do
+ * not move, so the grid changes only when vehicles are assigned or called
+ * off.
+ */
+public class EtaService {
+    public static final int UNKNOWN = -1;
+    private static final int NONE = -1;
+    // The grid is sized for about this many vehicles per cell.
+    private static final int VEHICLES_PER_CELL = 4;
+
+    private final int cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private int step;
+
+    // Per vehicle id: when it reaches its pickup and its destination.
+    private final int[] pickupSteps;
+    private final int[] dropoffSteps;
+    // Per vehicle id: where and when it will next be free, and its grid cell.
+    private final int[] freeX;
+    private final int[] freeY;
+    private final int[] freeSteps;
+    private final int[] cellOf;
+    // The vehicles in each cell, chained through next and previous.
+    private final int[] heads;
+    private final int[] next;
+    private final int[] previous;
+    // The vehicle assigned to each passenger still to be dropped off.
+    private final Map<Passenger, Integer> vehicleOf;
+
+    /**
+     * Create a service for a fleet, every vehicle of which is free.
+     *
+     * @param cityWidth  The city's width.
+     * @param cityHeight The city's height.
+     * @param vehicles   The fleet, in id order.
+     */
+    public EtaService(int cityWidth, int cityHeight, List<Vehicle> vehicles) {
+        int fleetSize = vehicles.size();
+        double area = (double) cityWidth * cityHeight;
+        cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(area * VEHICLES_PER_CELL / Math.max(1, fleetSize))));
+        cellsX = (cityWidth + cellSize - 1) / cellSize;
+        cellsY = (cityHeight + cellSize - 1) / cellSize;
+
+        pickupSteps = new int[fleetSize];
+        dropoffSteps = new int[fleetSize];
+        freeX = new int[fleetSize];
+        freeY = new int[fleetSize];
+        freeSteps = new int[fleetSize];
+        cellOf = new int[fleetSize];
+        heads = new int[cellsX * cellsY];
+        next = new int[fleetSize];
+        previous = new int[fleetSize];
+        vehicleOf = new HashMap<>();
+        Arrays.fill(heads, NONE);
+        Arrays.fill(pickupSteps, UNKNOWN);
+        Arrays.fill(dropoffSteps, UNKNOWN);
+        for (Vehicle vehicle : vehicles) {
+            Location location = vehicle.getLocation();
+            place(vehicle.getId(), location.getX(), location.getY(), 0);
+        }
+    }
+
+    /**
+     * Set the current step. Called by the company at the start of each step.
+     *
+     * @param step The current step.
+     */
+    public void setStep(int step) {
+        this.step = step;
+    }
+
+    /**
+     * A vehicle has been sent to pick up a passenger. It sets off in the
+     * next step.
+     *
+     * @param vehicle   The vehicle.
+     * @param passenger The passenger.
+     */
+    public void vehicleAssigned(Vehicle vehicle, Passenger passenger) {
+        int id = vehicle.getId();
+        Location pickup = passenger.getPickupLocation();
+        Location destination = passenger.getDestination();
+        pickupSteps[id] = step + travelSteps(vehicle.getLocation(), pickup);
+        dropoffSteps[id] = pickupSteps[id] + travelSteps(pickup, destination);
+        vehicleOf.put(passenger, id);
+        unlink(id);
+        place(id, destination.getX(), destination.getY(), dropoffSteps[id]);
+    }
+
+    /**
+     * A vehicle has picked up its passenger and sets off for the
+     * destination in the next step.
+     *
+     * @param vehicle   The vehicle.
+     * @param passenger The passenger.
+     */
+    public void passengerPickedUp(Vehicle vehicle, Passenger passenger) {
+        int id = vehicle.getId();
+        pickupSteps[id] = step;
+        dropoffSteps[id] = step + travelSteps(passenger.getPickupLocation(), passenger.getDestination());
+        freeSteps[id] = dropoffSteps[id];
+    }
+
+    /**
+     * A vehicle has dropped off its passenger and is free where it stands,
+     * which is where the grid already has it. A shared taxi with passengers
+     * still aboard is then updated by {@link #routeChanged}.
+     *
+     * @param vehicle   The vehicle.
+     * @param passenger The passenger.
+     */
+    public void passengerDroppedOff(Vehicle vehicle, Passenger passenger) {
+        int id = vehicle.getId();
+        if (vehicleOf.remove(passenger) == null) {
+            // A passenger who joined a shared trip; see routeChanged.
+            return;
+        }
+        pickupSteps[id] = UNKNOWN;
+        dropoffSteps[id] = UNKNOWN;
+        freeSteps[id] = step;
+    }
+
+    /**
+     * A shared taxi's route has changed: a passenger has joined its trip, or
+     * one of several has been dropped off. The passenger who hailed the taxi
+     * may be dropped off later than planned, and the taxi will next be free
+     * where the route ends. Passengers who joined the trip are not tracked,
+     * and their ETAs are {@link #UNKNOWN}.
+     *
+     * @param vehicle The taxi.
+     * @param route   Its stops, in order.
+     */
+    public void routeChanged(Vehicle vehicle, List<RouteStop> route) {
+        int id = vehicle.getId();
+        Location at = vehicle.getLocation();
+        int arrival = step;
+        for (int i = 0; i < route.size(); i++) {
+            RouteStop stop = route.get(i);
+            Location next = stop.getLocation();
+            // Further stops at the same place are made in the same step.
+            arrival += i == 0 ? travelSteps(at, next) : at.distance(next);
+            at = next;
+            if (!stop.isPickup() && Integer.valueOf(id).equals(vehicleOf.get(stop.getPassenger()))) {
+                dropoffSteps[id] = arrival;
+            }
+        }
+        unlink(id);
+        place(id, at.getX(), at.getY(), arrival);
+    }
+
+    /**
+     * A vehicle's pickup has been called off and it is free where it stands.
+     *
+     * @param vehicle   The vehicle.
+     * @param passenger The passenger who gave up.
+     */
+    public void pickupCancelled(Vehicle vehicle, Passenger passenger) {
+        int id = vehicle.getId();
+        vehicleOf.remove(passenger);
+        pickupSteps[id] = UNKNOWN;
+        dropoffSteps[id] = UNKNOWN;
+        unlink(id);
+        Location location = vehicle.getLocation();
+        place(id, location.getX(), location.getY(), step);
+    }
+
+    /**
+     * Get how long an assigned passenger has to wait for their vehicle.
+     *
+     * @param passenger The passenger.
+     * @return The number of steps until pickup, 0 if they have been picked
+     * up, or {@link #UNKNOWN} if no vehicle has been assigned to them.
+     */
+    public int getPickupEta(Passenger passenger) {
+        Integer id = vehicleOf.get(passenger);
+        if (id == null) {
+            return UNKNOWN;
+        }
+        return Math.max(0, pickupSteps[id] - step);
+    }
+
+    /**
+     * Get how long an assigned passenger has until they are dropped off.
+     *
+     * @param passenger The passenger.
+     * @return The number of steps until drop-off, or {@link #UNKNOWN} if
+     * no vehicle has been assigned to them.
+     */
+    public int getDropoffEta(Passenger passenger) {
+        Integer id = vehicleOf.get(passenger);
+        if (id == null) {
+            return UNKNOWN;
+        }
+        return Math.max(0, dropoffSteps[id] - step);
+    }
+
+    /**
+     * Estimate how soon a vehicle could reach a pickup location: the
+     * nearest free vehicle, or a busy one that will be free soon enough
+     * nearby, if it were sent straight away.
+     *
+     * @param pickup The pickup location.
+     * @return The estimated number of steps, or {@link #UNKNOWN} if there are no vehicles.
+     */
+    public int estimatePickupEta(Location pickup) {
+        int[] nearest = new int[1];
+        int[] etas = new int[1];
+        return findNearest(pickup, nearest, etas) == 0 ? UNKNOWN : etas[0];
+    }
+
+    /**
+     * Find the vehicles that could reach a pickup location soonest, counting
+     * the time busy vehicles need to finish their current trip.
+     *
+     * @param pickup The pickup location.
+     * @param k      The most vehicles to find.
+     * @return The ids of up to k vehicles, soonest first.
+     * @throws IllegalArgumentException if k is negative.
+     */
+    public int[] nearestVehicles(Location pickup, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative: " + k);
+        }
+        int[] nearest = new int[k];
+        int found = findNearest(pickup, nearest, new int[k]);
+        return found == k ? nearest : Arrays.copyOf(nearest, found);
+    }
+
+    /**
+     * Search the grid in rings of cells around a location for the vehicles
+     * with the lowest estimated ETA, kept sorted by insertion.
+     *
+     * @param pickup  The pickup location.
+     * @param nearest Receives the ids of the vehicles found.
+     * @param etas    Receives their estimated ETAs.
+     * @return The number of vehicles found.
+     */
+    private int findNearest(Location pickup, int[] nearest, int[] etas) {
+        int k = nearest.length;
+        int x = pickup.getX();
+        int y = pickup.getY();
+        int cellX = Math.min(cellsX - 1, Math.max(0, x / cellSize));
+        int cellY = Math.min(cellsY - 1, Math.max(0, y / cellSize));
+        int maxRing = Math.max(Math.max(cellX, cellsX - 1 - cellX), Math.max(cellY, cellsY - 1 - cellY));
+        int found = 0;
+        for (int ring = 0; ring <= maxRing && k > 0; ring++) {
+            // Nothing in this ring or beyond is closer than this.
+            long lowerBound = ring == 0 ? 0 : (long) (ring - 1) * cellSize + 1;
+            if (found == k && etas[k - 1] <= lowerBound) {
+                break;
+            }
+            for (int cy = cellY - ring; cy <= cellY + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) {
+                    continue;
+                }
+                boolean edgeRow = cy == cellY - ring || cy == cellY + ring;
+                int stride = edgeRow ? 1 : Math.max(1, 2 * ring);
+                for (int cx = cellX - ring; cx <= cellX + ring; cx += stride) {
+                    if (cx < 0 || cx >= cellsX) {
+                        continue;
+                    }
+                    for (int id = heads[cy * cellsX + cx]; id != NONE; id = next[id]) {
+                        int distance = Math.max(Math.abs(freeX[id] - x), Math.abs(freeY[id] - y));
+                        int eta = Math.max(0, freeSteps[id] - step) + Math.max(1, distance);
+                        if (found < k || eta < etas[found - 1]) {
+                            int position = found < k ? found++ : k - 1;
+                            while (position > 0 && etas[position - 1] > eta) {
+                                etas[position] = etas[position - 1];
+                                nearest[position] = nearest[position - 1];
+                                position--;
+                            }
+                            etas[position] = eta;
+                            nearest[position] = id;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of steps a vehicle takes to travel between two
+     * locations, counting the step in which it arrives.
+     */
+    private static int travelSteps(Location from, Location to) {
+        return Math.max(1, from.distance(to));
+    }
+
+    /**
+     * Put a vehicle in the grid at the point where it will next be free.
+     */
+    private void place(int id, int x, int y, int freeStep) {
+        freeX[id] = x;
+        freeY[id] = y;
+        freeSteps[id] = freeStep;
+        int cellX = Math.min(cellsX - 1, Math.max(0, x / cellSize));
+        int cellY = Math.min(cellsY - 1, Math.max(0, y / cellSize));
+        int cell = cellY * cellsX + cellX;
+        int head = heads[cell];
+        previous[id] = NONE;
+        next[id] = head;
+        if (head != NONE) {
+            previous[head] = id;
+        }
+        heads[cell] = id;
+        cellOf[id] = cell;
+    }
+
+    /**
+     * Take a vehicle out of its grid cell.
+     */
+    private void unlink(int id) {
+        int before = previous[id];
+        int after = next[id];
+        if (before == NONE) {
+            heads[cellOf[id]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of int ids ordered by long keys, with an index from
+ * each id to its position in the heap. The index makes it possible to
+ * change the key of, or remove, any id in O(log n), as well as to insert
+ * and remove the minimum.
+ * <p>
+ * Ids must be non-negative and should be small and dense, such as slots
+ * in a store, since the index is an array indexed by id.
+ */
+public class IndexedHeap {
+    private static final int ABSENT = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The ids in heap order.
+    private int[] heap;
+    // For each id, its position in the heap, or ABSENT.
+    private int[] positions;
+    // For each id, its key.
+    private long[] keys;
+    private int size;
+
+    /**
+     * Create an empty heap.
+     */
+    public IndexedHeap() {
+        heap = new int[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        keys = new long[INITIAL_CAPACITY];
+        Arrays.fill(positions, ABSENT);
+    }
+
+    /**
+     * Add an id to the heap.
+     *
+     * @param id  The id (must not already be in the heap).
+     * @param key The id's key; the smallest key is at the top.
+     * @throws IllegalArgumentException if the id is negative or already present.
+     */
+    public void insert(int id, long key) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative id: " + id);
+        }
+        ensureIdCapacity(id);
+        if (positions[id] != ABSENT) {
+            throw new IllegalArgumentException("Id already in heap: " + id);
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        keys[id] = key;
+        heap[size] = id;
+        positions[id] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Change the key of an id in the heap.
+     *
+     * @param id  The id.
+     * @param key The new key.
+     * @throws IllegalArgumentException if the id is not in the heap.
+     */
+    public void changeKey(int id, long key) {
+        int position = positionOf(id);
+        long old = keys[id];
+        keys[id] = key;
+        if (key < old) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    /**
+     * Lower the key of an id in the heap, moving it towards the top.
+     *
+     * @param id  The id.
+     * @param key The new key, which must not be greater than the old one.
+     * @throws IllegalArgumentException if the id is not in the heap or the
+     *                                  key is greater than the old one.
+     */
+    public void decreaseKey(int id, long key) {
+        int position = positionOf(id);
+        if (key > keys[id]) {
+            throw new IllegalArgumentException("New key is greater than old key for id " + id);
+        }
+        keys[id] = key;
+        siftUp(position);
+    }
+
+    /**
+     * Remove an id from the heap.
+     *
+     * @param id The id.
+     * @throws IllegalArgumentException if the id is not in the heap.
+     */
+    public void remove(int id) {
+        int position = positionOf(id);
+        int lastId = heap[--size];
+        positions[id] = ABSENT;
+        if (position == size) {
+            return;
+        }
+        heap[position] = lastId;
+        positions[lastId] = position;
+        siftDown(position);
+        siftUp(positions[lastId]);
+    }
+
+    /**
+     * @return The id with the smallest key, or -1 if the heap is empty.
+     */
+    public int peek() {
+        return size == 0 ? ABSENT : heap[0];
+    }
+
+    /**
+     * Remove and return the id with the smallest key.
+     *
+     * @return The id, or -1 if the heap is empty.
+     */
+    public int poll() {
+        if (size == 0) {
+            return ABSENT;
+        }
+        int id = heap[0];
+        remove(id);
+        return id;
+    }
+
+    /**
+     * @param id An id.
+     * @return Whether the id is in the heap.
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < positions.length && positions[id] != ABSENT;
+    }
+
+    /**
+     * @param id An id in the heap.
+     * @return The id's key.
+     */
+    public long getKey(int id) {
+        positionOf(id);
+        return keys[id];
+    }
+
+    /**
+     * @param position A position in the heap, from 0 to size() - 1.
+     * @return The id at that position. Ids are not in key order.
+     */
+    public int idAt(int position) {
+        return heap[position];
+    }
+
+    /**
+     * @return The number of ids in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether the heap is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int positionOf(int id) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("Id not in heap: " + id);
+        }
+        return positions[id];
+    }
+
+    private void siftUp(int position) {
+        int id = heap[position];
+        long key = keys[id];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentId = heap[parent];
+            if (keys[parentId] <= key) {
+                break;
+            }
+            heap[position] = parentId;
+            positions[parentId] = position;
+            position = parent;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+    private void siftDown(int position) {
+        int id = heap[position];
+        long key = keys[id];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int childId = heap[child];
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[childId]) {
+                child = right;
+                childId = heap[right];
+            }
+            if (key <= keys[childId]) {
+                break;
+            }
+            heap[position] = childId;
+            positions[childId] = position;
+            position = child;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+    private void ensureIdCapacity(int id) {
+        if (id >= positions.length) {
+            int capacity = Math.max(positions.length * 2, id + 1);
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, oldLength, capacity, ABSENT);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+    }
+}
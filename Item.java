@@ -1,3 +1,8 @@
 public interface Item {
     public Location getLocation();
+
+    /**
+     * @return The kind of item this is, as recorded in city snapshots.
+     */
+    public ItemType getType();
 }
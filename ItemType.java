@@ -0,0 +1,42 @@
+/**
+ * The kind of an item in the city, as recorded in a {@link CitySnapshot}.
+ * A snapshot stores each item's type as one byte, its ordinal, so readers
+ * such as exporters and metrics can tell items apart without touching the
+ * images the GUI draws them with.
+ */
+public enum ItemType {
+    TAXI("images/taxi.jpg"),
+    OCCUPIED_TAXI("images/taxi+person.jpg"),
+    PASSENGER("images/person.jpg");
+
+    private static final ItemType[] VALUES = values();
+
+    private final String imageName;
+
+    ItemType(String imageName) {
+        this.imageName = imageName;
+    }
+
+    /**
+     * @return The resource name of the image the GUI draws items of this type with.
+     */
+    public String getImageName() {
+        return imageName;
+    }
+
+    /**
+     * @param code A type's code, as stored in a snapshot.
+     * @return The type with that code.
+     * @throws ArrayIndexOutOfBoundsException if no type has that code.
+     */
+    static ItemType fromCode(byte code) {
+        return VALUES[code];
+    }
+
+    /**
+     * @return The type's code, as stored in a snapshot.
+     */
+    byte getCode() {
+        return (byte) ordinal();
+    }
+}
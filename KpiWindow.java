@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Key performance figures of a taxi company over a sliding window of the
+ * most recent steps: pickups, missed requests and fleet utilisation.
+ * <p>
+ * The window is a ring of buckets, each covering a fixed number of steps,
+ * with a running total kept for every figure. Recording an event adds to
+ * the current bucket and the total; moving into a new bucket subtracts the
+ * bucket that falls out of the window. Both are O(1), as is every query,
+ * however long the window. The window covers the current bucket and the
+ * full buckets before it, so it spans between one bucket less than its
+ * length and its full length.
+ */
+public class KpiWindow {
+    public static final int DEFAULT_BUCKETS = 100;
+
+    private final int steps;
+    private final int bucketSteps;
+
+    // Per bucket, indexed by bucket number modulo the number of buckets.
+    private final long[] pickups;
+    private final long[] missed;
+    private final long[] busyVehicleSteps;
+    private final long[] sampledSteps;
+    // Running totals over all buckets.
+    private long totalPickups;
+    private long totalMissed;
+    private long totalBusyVehicleSteps;
+    private long totalSampledSteps;
+    // The number of the bucket events are recorded in.
+    private long currentBucket;
+
+    /**
+     * Create a window over the given number of steps.
+     *
+     * @param steps   The length of the window in steps. It is rounded up to
+     *                a whole number of buckets.
+     * @param buckets The number of buckets the window is divided into. More
+     *                buckets make the window's edge sharper but use more memory.
+     * @throws IllegalArgumentException if either value is not positive.
+     */
+    public KpiWindow(int steps, int buckets) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Window must cover at least one step: " + steps);
+        }
+        if (buckets < 1) {
+            throw new IllegalArgumentException("Window must have at least one bucket: " + buckets);
+        }
+        buckets = Math.min(buckets, steps);
+        this.bucketSteps = (steps + buckets - 1) / buckets;
+        this.steps = bucketSteps * buckets;
+        pickups = new long[buckets];
+        missed = new long[buckets];
+        busyVehicleSteps = new long[buckets];
+        sampledSteps = new long[buckets];
+    }
+
+    /**
+     * Move the window forward so that it ends at the given step, dropping
+     * the buckets that fall out of it. Steps must not go backwards.
+     *
+     * @param step The current step.
+     */
+    public void advanceTo(int step) {
+        long bucket = step / bucketSteps;
+        if (bucket - currentBucket >= pickups.length) {
+            // Every bucket has fallen out of the window.
+            Arrays.fill(pickups, 0);
+            Arrays.fill(missed, 0);
+            Arrays.fill(busyVehicleSteps, 0);
+            Arrays.fill(sampledSteps, 0);
+            totalPickups = totalMissed = totalBusyVehicleSteps = totalSampledSteps = 0;
+            currentBucket = bucket;
+            return;
+        }
+        while (currentBucket < bucket) {
+            currentBucket++;
+            int index = (int) (currentBucket % pickups.length);
+            totalPickups -= pickups[index];
+            totalMissed -= missed[index];
+            totalBusyVehicleSteps -= busyVehicleSteps[index];
+            totalSampledSteps -= sampledSteps[index];
+            pickups[index] = 0;
+            missed[index] = 0;
+            busyVehicleSteps[index] = 0;
+            sampledSteps[index] = 0;
+        }
+    }
+
+    /**
+     * Record a pickup in the current step.
+     */
+    public void recordPickup() {
+        pickups[currentIndex()]++;
+        totalPickups++;
+    }
+
+    /**
+     * Record a request that was turned away or abandoned in the current step.
+     */
+    public void recordMissed() {
+        missed[currentIndex()]++;
+        totalMissed++;
+    }
+
+    /**
+     * Record how many vehicles are busy in the current step. Should be
+     * called once per step.
+     *
+     * @param busyVehicles The number of busy vehicles.
+     */
+    public void recordBusyVehicles(int busyVehicles) {
+        int index = currentIndex();
+        busyVehicleSteps[index] += busyVehicles;
+        sampledSteps[index]++;
+        totalBusyVehicleSteps += busyVehicles;
+        totalSampledSteps++;
+    }
+
+    /**
+     * @return The length of the window in steps.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return The number of pickups in the window.
+     */
+    public long getPickups() {
+        return totalPickups;
+    }
+
+    /**
+     * @return The number of requests turned away or abandoned in the window.
+     */
+    public long getMissed() {
+        return totalMissed;
+    }
+
+    /**
+     * Get the share of the fleet that was busy, averaged over the steps in
+     * the window.
+     *
+     * @param fleetSize The number of vehicles in the fleet.
+     * @return The utilisation, from 0 to 1, or 0 if no steps or vehicles were recorded.
+     */
+    public double getUtilisation(int fleetSize) {
+        if (fleetSize == 0 || totalSampledSteps == 0) {
+            return 0;
+        }
+        return (double) totalBusyVehicleSteps / ((double) fleetSize * totalSampledSteps);
+    }
+
+    /**
+     * @return The index of the bucket events are recorded in.
+     */
+    private int currentIndex() {
+        return (int) (currentBucket % pickups.length);
+    }
+}
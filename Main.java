@@ -1,6 +1,19 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class Main {
-    public static void main(String[] args) {
-        Simulation simulation = new Simulation();
+    /**
+     * Run the simulation. An optional argument names a scenario file;
+     * without one the default scenario is run.
+     *
+     * @param args The command-line arguments.
+     * @throws IOException If the scenario file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        long launched = System.nanoTime();
+        Scenario scenario = args.length > 0 ? Scenario.load(Path.of(args[0])) : Scenario.defaults();
+        Simulation simulation = new Simulation(scenario);
+        simulation.setLaunchNanos(launched);
         simulation.run();
     }
 }
@@ -0,0 +1,102 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serve the simulation's metrics to Prometheus from the JDK's built-in
+ * HTTP server, bound to the loopback address only.
+ * <p>
+ * The simulation thread publishes a {@link MetricsSnapshot} at most every
+ * {@link #PUBLISH_INTERVAL_MILLIS} milliseconds; scrapes render whichever
+ * snapshot was published last, so they never wait for or read from the
+ * live simulation.
+ */
+public class MetricsServer implements AutoCloseable {
+    public static final int PUBLISH_INTERVAL_MILLIS = 250;
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private volatile MetricsSnapshot snapshot;
+    private long lastPublishNanos;
+
+    /**
+     * Start serving metrics at http://localhost:port/metrics.
+     *
+     * @param port The port to listen on.
+     * @throws IOException If the server cannot be started.
+     */
+    public MetricsServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handleScrape);
+        server.start();
+    }
+
+    /**
+     * Publish a new snapshot if the last one is older than the publishing
+     * interval. Called by the simulation thread after each step.
+     *
+     * @param step      The number of steps taken.
+     * @param company   The taxi company.
+     * @param source    The passenger source.
+     * @param stepTimes The histogram of step durations.
+     */
+    public void publishIfDue(long step, TaxiCompany company, PassengerSource source, StepTimeHistogram stepTimes) {
+        long now = System.nanoTime();
+        if (snapshot == null || now - lastPublishNanos >= TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL_MILLIS)) {
+            publish(new MetricsSnapshot(step, company, source, stepTimes));
+            lastPublishNanos = now;
+        }
+    }
+
+    /**
+     * Replace the snapshot served to scrapes.
+     *
+     * @param snapshot The new snapshot.
+     */
+    public void publish(MetricsSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving metrics.
+     */
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * Answer a scrape with the latest snapshot.
+     */
+    private void handleScrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            MetricsSnapshot current = snapshot;
+            if (current == null) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            byte[] body = current.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.List;
+
+/**
+ * An immutable copy of the simulation's counters at the end of a step,
+ * which can be rendered in the Prometheus text exposition format from any
+ * thread without touching the live simulation.
+ */
+public class MetricsSnapshot {
+    private final long step;
+    private final long pickups;
+    private final long dropoffs;
+    private final long abandoned;
+    private final long idleSteps;
+    private final long activeTaxis;
+    private final long fleetSize;
+    private final long passengersCreated;
+    private final long missedPickups;
+    private final long queueDepth;
+    private final long[] stepTimeCounts;
+    private final long stepTimeCount;
+    private final long stepTimeSumNanos;
+    // Per sliding window: its length, pickups, missed requests and utilisation.
+    private final int[] windowSteps;
+    private final long[] windowPickups;
+    private final long[] windowMissed;
+    private final double[] windowUtilisation;
+
+    /**
+     * Take a snapshot of the simulation's counters.
+     *
+     * @param step      The number of steps taken.
+     * @param company   The taxi company.
+     * @param source    The passenger source.
+     * @param stepTimes The histogram of step durations.
+     */
+    public MetricsSnapshot(long step, TaxiCompany company, PassengerSource source, StepTimeHistogram stepTimes) {
+        this.step = step;
+        pickups = company.getTotalPickups();
+        dropoffs = company.getTotalDropoffs();
+        abandoned = company.getTotalAbandoned();
+        idleSteps = company.getTotalIdleSteps();
+        activeTaxis = company.getActiveTaxiCount();
+        fleetSize = company.getVehicles().size();
+        passengersCreated = source.getTotalPassengersCreated();
+        missedPickups = source.getMissedPickups();
+        queueDepth = company.getRequestQueue().getDepth();
+        stepTimeCounts = stepTimes.getCounts();
+        stepTimeCount = stepTimes.getCount();
+        stepTimeSumNanos = stepTimes.getSumNanos();
+        List<KpiWindow> windows = company.getKpiWindows();
+        windowSteps = new int[windows.size()];
+        windowPickups = new long[windows.size()];
+        windowMissed = new long[windows.size()];
+        windowUtilisation = new double[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            KpiWindow window = windows.get(i);
+            windowSteps[i] = window.getSteps();
+            windowPickups[i] = window.getPickups();
+            windowMissed[i] = window.getMissed();
+            windowUtilisation[i] = window.getUtilisation((int) fleetSize);
+        }
+    }
+
+    /**
+     * @return The snapshot in the Prometheus text exposition format.
+     */
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder(2048);
+        counter(text, "taxi_simulation_steps_total", "Steps simulated.", step);
+        counter(text, "taxi_pickups_total", "Passengers picked up.", pickups);
+        counter(text, "taxi_dropoffs_total", "Passengers dropped off.", dropoffs);
+        counter(text, "taxi_abandoned_total", "Passengers who gave up waiting.", abandoned);
+        counter(text, "taxi_idle_steps_total", "Steps spent idle by all taxis.", idleSteps);
+        gauge(text, "taxi_active_taxis", "Taxis currently busy.", activeTaxis);
+        gauge(text, "taxi_fleet_size", "Vehicles operated by the company.", fleetSize);
+        counter(text, "taxi_passengers_created_total", "Passengers created by the passenger source.",
+                passengersCreated);
+        counter(text, "taxi_missed_pickups_total", "Passengers for whom no taxi was available.",
+                missedPickups);
+        gauge(text, "taxi_request_queue_depth", "Pickup requests waiting for dispatch.", queueDepth);
+
+        if (windowSteps.length > 0) {
+            windowGauge(text, "taxi_window_pickups", "Passengers picked up in the last steps.", windowPickups);
+            windowGauge(text, "taxi_window_missed", "Requests turned away or abandoned in the last steps.",
+                    windowMissed);
+            text.append("# HELP taxi_window_utilisation Share of the fleet busy over the last steps.\n");
+            text.append("# TYPE taxi_window_utilisation gauge\n");
+            for (int i = 0; i < windowSteps.length; i++) {
+                text.append("taxi_window_utilisation{steps=\"").append(windowSteps[i]).append("\"} ")
+                        .append(windowUtilisation[i]).append('\n');
+            }
+        }
+
+        String name = "taxi_step_duration_seconds";
+        text.append("# HELP ").append(name).append(" Time taken to simulate a step.\n");
+        text.append("# TYPE ").append(name).append(" histogram\n");
+        long[] bounds = StepTimeHistogram.getBounds();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += stepTimeCounts[i];
+            text.append(name).append("_bucket{le=\"").append(bounds[i] / 1e9).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        text.append(name).append("_bucket{le=\"+Inf\"} ").append(stepTimeCount).append('\n');
+        text.append(name).append("_sum ").append(stepTimeSumNanos / 1e9).append('\n');
+        text.append(name).append("_count ").append(stepTimeCount).append('\n');
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        metric(text, name, help, "counter", value);
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, long value) {
+        metric(text, name, help, "gauge", value);
+    }
+
+    private void windowGauge(StringBuilder text, String name, String help, long[] values) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        for (int i = 0; i < windowSteps.length; i++) {
+            text.append(name).append("{steps=\"").append(windowSteps[i]).append("\"} ")
+                    .append(values[i]).append('\n');
+        }
+    }
+
+    private static void metric(StringBuilder text, String name, String help, String type, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+}
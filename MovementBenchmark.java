@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Measure moving vehicles in vector lanes against moving them one by one.
+ * <p>
+ * The kernel test moves 10^6 bare coordinate pairs with
+ * {@link MovementKernel#move} and with {@link MovementKernel#moveScalar}.
+ * The fleet test moves a fleet of 10^5 taxis heading across a large city,
+ * once with every taxi acting on its own and once with a
+ * {@link BatchMovement}, and checks that both fleets end up in the same
+ * places. Vector lanes are only used with the vector kernel built in:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -d out *.java vector/*.java
+ * java --add-modules jdk.incubator.vector -cp out MovementBenchmark
+ * </pre>
+ */
+public class MovementBenchmark {
+    private static final int POSITIONS = 1_000_000;
+    private static final int KERNEL_PASSES = 200;
+    private static final int TAXIS = 100_000;
+    private static final int CITY_SIZE = 10_000;
+    private static final int FLEET_STEPS = 200;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Run the benchmark and print the mean cost of moving one vehicle one step.
+     *
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        System.out.println(MovementKernel.getLanes() + " lanes per vector");
+        for (int round = 1; round <= ROUNDS; round++) {
+            // The first rounds warm up the JIT; the last is the result.
+            boolean report = round == ROUNDS;
+            runKernel(report);
+            runFleet(report);
+        }
+    }
+
+    private static void runKernel(boolean report) {
+        SplittableRandom rand = new SplittableRandom(12345);
+        int[] startX = new int[POSITIONS];
+        int[] startY = new int[POSITIONS];
+        int[] targetX = new int[POSITIONS];
+        int[] targetY = new int[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            startX[i] = rand.nextInt(CITY_SIZE);
+            startY[i] = rand.nextInt(CITY_SIZE);
+            targetX[i] = rand.nextInt(CITY_SIZE);
+            targetY[i] = rand.nextInt(CITY_SIZE);
+        }
+        boolean[] arrived = new boolean[POSITIONS];
+
+        int[] x = startX.clone();
+        int[] y = startY.clone();
+        long start = System.nanoTime();
+        long scalarArrivals = 0;
+        for (int pass = 0; pass < KERNEL_PASSES; pass++) {
+            scalarArrivals += MovementKernel.moveScalar(x, y, targetX, targetY, arrived, POSITIONS);
+        }
+        long scalar = System.nanoTime() - start;
+        int[] scalarX = x;
+        int[] scalarY = y;
+
+        x = startX.clone();
+        y = startY.clone();
+        start = System.nanoTime();
+        long vectorArrivals = 0;
+        for (int pass = 0; pass < KERNEL_PASSES; pass++) {
+            vectorArrivals += MovementKernel.move(x, y, targetX, targetY, arrived, POSITIONS);
+        }
+        long vector = System.nanoTime() - start;
+
+        boolean same = scalarArrivals == vectorArrivals
+                && Arrays.equals(scalarX, x) && Arrays.equals(scalarY, y);
+        if (report) {
+            double moves = (double) POSITIONS * KERNEL_PASSES;
+            System.out.printf("kernel %,d positions: scalar %5.2f ns  vector %5.2f ns  per move  (%.1fx, same: %b)%n",
+                    POSITIONS, scalar / moves, vector / moves, (double) scalar / vector, same);
+        }
+    }
+
+    private static void runFleet(boolean report) {
+        TaxiCompany scalarCompany = newCompany();
+        TaxiCompany batchCompany = newCompany();
+        List<Vehicle> scalarFleet = scalarCompany.getVehicles();
+        List<Vehicle> batchFleet = batchCompany.getVehicles();
+
+        long start = System.nanoTime();
+        for (int step = 0; step < FLEET_STEPS; step++) {
+            for (Vehicle vehicle : scalarFleet) {
+                vehicle.act();
+            }
+        }
+        long scalar = System.nanoTime() - start;
+
+        BatchMovement batch = new BatchMovement(batchFleet);
+        start = System.nanoTime();
+        for (int step = 0; step < FLEET_STEPS; step++) {
+            batch.act();
+        }
+        long batched = System.nanoTime() - start;
+
+        boolean same = true;
+        for (int i = 0; i < TAXIS; i++) {
+            same &= scalarFleet.get(i).getLocation().equals(batchFleet.get(i).getLocation());
+        }
+        if (report) {
+            double moves = (double) TAXIS * FLEET_STEPS;
+            System.out.printf("fleet  %,d taxis:     scalar %5.2f ns  batch  %5.2f ns  per move  (%.1fx, same: %b)%n",
+                    TAXIS, scalar / moves, batched / moves, (double) scalar / batched, same);
+        }
+    }
+
+    /**
+     * Create a company whose taxis each head for the far corner of the
+     * city, too far away to arrive while being measured.
+     */
+    private static TaxiCompany newCompany() {
+        City city = new City(CITY_SIZE, CITY_SIZE);
+        TaxiCompany company = new TaxiCompany(city, TAXIS, 12345, RequestQueue.DEFAULT_CAPACITY);
+        company.setMovementLogged(false);
+        for (Vehicle vehicle : company.getVehicles()) {
+            Location location = vehicle.getLocation();
+            int x = location.getX() < CITY_SIZE / 2 ? CITY_SIZE - 1 : 0;
+            int y = location.getY() < CITY_SIZE / 2 ? CITY_SIZE - 1 : 0;
+            vehicle.setPickupLocation(new Location(x, y));
+        }
+        return company;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Move a batch of positions one step towards their targets at once, the way
+ * {@link Location#nextLocation(Location)} moves one: each coordinate goes up
+ * or down by one, or stays put, towards the target's.
+ * <p>
+ * Positions and targets are held in separate arrays of x and y coordinates,
+ * so that whole runs of them can be moved in SIMD lanes. The lanes come from
+ * the JDK's Vector API, an incubator module, so they are optional: the
+ * vector kernel in the {@code vector} directory is only used if it was
+ * compiled in and the program runs with
+ * {@code --add-modules jdk.incubator.vector}. Otherwise positions are moved
+ * one at a time, with the same results.
+ */
+public final class MovementKernel {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "VectorMovementKernel";
+
+    // The vector kernel, or null if it is not available.
+    private static final Lanes LANES = loadLanes();
+
+    /**
+     * A kernel that moves positions in SIMD lanes.
+     */
+    interface Lanes {
+        /**
+         * Do what {@link MovementKernel#move} does, on arrays already checked.
+         */
+        int move(int[] x, int[] y, int[] targetX, int[] targetY, boolean[] arrived, int count);
+
+        /**
+         * @return The number of positions moved together in one vector.
+         */
+        int getLanes();
+    }
+
+    private MovementKernel() {
+    }
+
+    /**
+     * Move the first count positions one step towards their targets, in
+     * place, and record which of them are now at their target.
+     *
+     * @param x       The x-coordinates of the positions.
+     * @param y       The y-coordinates of the positions.
+     * @param targetX The x-coordinates of the targets.
+     * @param targetY The y-coordinates of the targets.
+     * @param arrived Set to whether each position is at its target after the move.
+     * @param count   The number of positions to move.
+     * @return The number of positions at their target after the move.
+     * @throws IndexOutOfBoundsException if an array is shorter than count.
+     */
+    public static int move(int[] x, int[] y, int[] targetX, int[] targetY, boolean[] arrived, int count) {
+        checkLengths(x, y, targetX, targetY, arrived, count);
+        if (LANES == null) {
+            return moveScalar(x, y, targetX, targetY, arrived, 0, count);
+        }
+        return LANES.move(x, y, targetX, targetY, arrived, count);
+    }
+
+    /**
+     * Do what {@link #move} does one position at a time, without vector
+     * lanes, to measure it against.
+     *
+     * @param x       The x-coordinates of the positions.
+     * @param y       The y-coordinates of the positions.
+     * @param targetX The x-coordinates of the targets.
+     * @param targetY The y-coordinates of the targets.
+     * @param arrived Set to whether each position is at its target after the move.
+     * @param count   The number of positions to move.
+     * @return The number of positions at their target after the move.
+     * @throws IndexOutOfBoundsException if an array is shorter than count.
+     */
+    public static int moveScalar(int[] x, int[] y, int[] targetX, int[] targetY, boolean[] arrived, int count) {
+        checkLengths(x, y, targetX, targetY, arrived, count);
+        return moveScalar(x, y, targetX, targetY, arrived, 0, count);
+    }
+
+    /**
+     * Move the positions from one index up to another one at a time, on
+     * arrays already checked.
+     *
+     * @return The number of those positions at their target after the move.
+     */
+    static int moveScalar(int[] x, int[] y, int[] targetX, int[] targetY, boolean[] arrived, int from, int to) {
+        int arrivals = 0;
+        for (int i = from; i < to; i++) {
+            x[i] += Integer.compare(targetX[i], x[i]);
+            y[i] += Integer.compare(targetY[i], y[i]);
+            arrived[i] = x[i] == targetX[i] && y[i] == targetY[i];
+            if (arrived[i]) {
+                arrivals++;
+            }
+        }
+        return arrivals;
+    }
+
+    /**
+     * @return The number of positions moved together in one vector, or 1 if
+     *         positions are moved one at a time.
+     */
+    public static int getLanes() {
+        return LANES == null ? 1 : LANES.getLanes();
+    }
+
+    private static void checkLengths(int[] x, int[] y, int[] targetX, int[] targetY, boolean[] arrived,
+                                     int count) {
+        if (count < 0 || count > x.length || count > y.length || count > targetX.length
+                || count > targetY.length || count > arrived.length) {
+            throw new IndexOutOfBoundsException("Count " + count + " exceeds the arrays");
+        }
+    }
+
+    /**
+     * Load the vector kernel if the incubator module is present and the
+     * kernel was compiled in.
+     *
+     * @return The vector kernel, or null if it is not available.
+     */
+    private static Lanes loadLanes() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (Lanes) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
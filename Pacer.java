@@ -0,0 +1,203 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decide when each step of the simulation should run.
+ * <p>
+ * Steps are scheduled on a fixed timestep measured against the monotonic
+ * {@link System#nanoTime()} clock, so time spent computing a step comes out
+ * of the wait before the next one rather than adding to it. The pacer runs
+ * in real time, at a multiple of real time (warp) or as fast as possible,
+ * and can be paused, resumed and single-stepped from another thread such
+ * as the GUI.
+ * <p>
+ * When steps overrun, the pacer runs the steps that are due back to back
+ * to catch up, but never more than a fixed number. Any further debt is
+ * dropped, and the simulation falls behind real time by that amount.
+ */
+public class Pacer {
+    public static final double UNLIMITED = Double.POSITIVE_INFINITY;
+    public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+
+    // The duration of one step when running in real time.
+    private final long stepNanos;
+    // The most steps that may run back to back to catch up.
+    private final int maxCatchUpSteps;
+    private final Object lock = new Object();
+
+    private double speed;
+    private boolean paused;
+    private int singleStepsRequested;
+    // The time at which the next step is due.
+    private long nextStepDue;
+    private boolean started;
+    // How late the most recent step started, in nanoseconds.
+    private long lateNanos;
+    // Time that could not be caught up, in nanoseconds.
+    private long droppedNanos;
+
+    /**
+     * Create a pacer running in real time.
+     *
+     * @param stepMillis      The duration of one step in real time, in milliseconds.
+     * @param maxCatchUpSteps The most steps that may run back to back after an overrun.
+     * @throws IllegalArgumentException if either value is negative.
+     */
+    public Pacer(int stepMillis, int maxCatchUpSteps) {
+        if (stepMillis < 0) {
+            throw new IllegalArgumentException("Step duration must not be negative: " + stepMillis);
+        }
+        if (maxCatchUpSteps < 0) {
+            throw new IllegalArgumentException("Catch-up steps must not be negative: " + maxCatchUpSteps);
+        }
+        this.stepNanos = TimeUnit.MILLISECONDS.toNanos(stepMillis);
+        this.maxCatchUpSteps = maxCatchUpSteps;
+        speed = stepMillis == 0 ? UNLIMITED : 1;
+    }
+
+    /**
+     * Wait until the next step is due. Returns straight away when running at
+     * unlimited speed or when behind schedule. While paused, waits until
+     * the pacer is resumed or a single step is requested.
+     * If the thread is interrupted, returns early with its interrupt status set.
+     */
+    public void awaitNextStep() {
+        synchronized (lock) {
+            try {
+                while (true) {
+                    if (singleStepsRequested > 0) {
+                        singleStepsRequested--;
+                        nextStepDue = System.nanoTime();
+                        lateNanos = 0;
+                        return;
+                    }
+                    if (paused) {
+                        lock.wait();
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    if (!started || speed == UNLIMITED) {
+                        started = true;
+                        nextStepDue = now;
+                        lateNanos = 0;
+                        return;
+                    }
+                    long interval = getIntervalNanos();
+                    long remaining = nextStepDue + interval - now;
+                    if (remaining <= 0) {
+                        nextStepDue += interval;
+                        long behind = now - nextStepDue;
+                        long allowed = maxCatchUpSteps * interval;
+                        if (behind > allowed) {
+                            droppedNanos += behind - allowed;
+                            nextStepDue = now - allowed;
+                        }
+                        lateNanos = now - nextStepDue;
+                        return;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stop running steps until resumed.
+     */
+    public void pause() {
+        synchronized (lock) {
+            paused = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Resume running steps. Time spent paused is not caught up.
+     */
+    public void resume() {
+        synchronized (lock) {
+            if (paused) {
+                paused = false;
+                nextStepDue = System.nanoTime() - getIntervalNanos();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Allow exactly one step to run while paused.
+     */
+    public void singleStep() {
+        synchronized (lock) {
+            singleStepsRequested++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return Whether the pacer is paused.
+     */
+    public boolean isPaused() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Set the speed as a multiple of real time.
+     *
+     * @param speed 1 for real time, more for warp, or {@link #UNLIMITED}.
+     * @throws IllegalArgumentException if speed is not positive.
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        synchronized (lock) {
+            this.speed = speed;
+            // Start the new schedule from now rather than from the old one.
+            nextStepDue = System.nanoTime() - getIntervalNanos();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return The speed as a multiple of real time, or {@link #UNLIMITED}.
+     */
+    public double getSpeed() {
+        synchronized (lock) {
+            return speed;
+        }
+    }
+
+    /**
+     * @return How far the simulation is behind real time, in nanoseconds:
+     * how late the most recent step started plus all time dropped after
+     * overruns.
+     */
+    public long getLagNanos() {
+        synchronized (lock) {
+            return droppedNanos + lateNanos;
+        }
+    }
+
+    /**
+     * @return The time lost to overruns that could not be caught up, in nanoseconds.
+     */
+    public long getDroppedNanos() {
+        synchronized (lock) {
+            return droppedNanos;
+        }
+    }
+
+    /**
+     * @return The current time between steps, in nanoseconds.
+     */
+    private long getIntervalNanos() {
+        if (speed == UNLIMITED) {
+            return 0;
+        }
+        return (long) (stepNanos / speed);
+    }
+}
@@ -4,7 +4,8 @@ import java.awt.*;
 public class Passenger implements DrawableItem {
     private final Location pickup;
     private final Location destination;
-    private final Image image;
+    // Shared by all passengers, and only loaded when first displayed.
+    private static Image image;
 
     /**
      * Create a new Passenger with a pickup and destination location.
@@ -27,8 +28,6 @@ public class Passenger implements DrawableItem {
 
         this.pickup = pickup;
         this.destination = destination;
-
-        image = new ImageIcon(getClass().getResource("images/person.jpg")).getImage();
     }
 
     /**
@@ -46,9 +45,19 @@ public class Passenger implements DrawableItem {
      * @return Image representing the passenger.
      */
     public Image getImage() {
+        if (image == null) {
+            image = new ImageIcon(Passenger.class.getResource("images/person.jpg")).getImage();
+        }
         return image;
     }
 
+    /**
+     * @return PASSENGER.
+     */
+    public ItemType getType() {
+        return ItemType.PASSENGER;
+    }
+
     /**
      * Get the passenger's current location (pickup point).
      *
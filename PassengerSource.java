@@ -1,12 +1,31 @@
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 
-public class PassengerSource implements Actor {
+public class PassengerSource implements Actor, RequestProducer {
     private final City city;
     private final TaxiCompany company;
-    private final Random rand;
-    private static final double CREATION_PROBABILITY = 0.06;
+    // This source's own random stream, shared with no other actor.
+    private final SplittableRandom rand;
+    public static final double CREATION_PROBABILITY = 0.06;
+    // Where drawTrip puts each coordinate of a trip.
+    static final int PICKUP_X = 0;
+    static final int PICKUP_Y = 1;
+    static final int DESTINATION_X = 2;
+    static final int DESTINATION_Y = 3;
+    static final int TRIP_LENGTH = 4;
+    private final double creationProbability;
+    // The mean number of passengers created per step, or 0 to use the probability.
+    private double demandRate;
+    // Chances that a request is premium or needs an accessible vehicle.
+    private double premiumProbability;
+    private double accessibilityProbability;
     private int missedPickups;
     private int totalPassengersCreated;
+    // Told as the number of passengers created and missed changes.
+    private final List<StatsListener> statsListeners;
+    // The coordinates of the trip being created.
+    private final int[] trip;
 
     /**
      * Construct a PassengerSource that will create passengers in a given city
@@ -17,37 +36,207 @@ public class PassengerSource implements Actor {
      * @throws NullPointerException if either city or company is null.
      */
     public PassengerSource(City city, TaxiCompany company) {
+        this(city, company, CREATION_PROBABILITY, 12345); // Fixed seed for repeatable tests
+    }
+
+    /**
+     * Construct a PassengerSource with a given demand and random seed.
+     *
+     * @param city                The city in which passengers will be created (must not be null).
+     * @param company             The taxi company used for handling pickups (must not be null).
+     * @param creationProbability The probability of creating a passenger in each step.
+     * @param seed                The seed for passenger generation.
+     * @throws NullPointerException     if either city or company is null.
+     * @throws IllegalArgumentException if the probability is not between 0 and 1,
+     *                                  or the city has only one location.
+     */
+    public PassengerSource(City city, TaxiCompany company, double creationProbability, long seed) {
         if (city == null) {
             throw new NullPointerException("City must not be null.");
         }
         if (company == null) {
             throw new NullPointerException("Company must not be null.");
         }
+        if (creationProbability < 0 || creationProbability > 1) {
+            throw new IllegalArgumentException(
+                    "Creation probability must be between 0 and 1: " + creationProbability);
+        }
+        // Otherwise no destination could differ from the pickup location.
+        if ((long) city.getWidth() * city.getHeight() < 2) {
+            throw new IllegalArgumentException("City must have at least two locations.");
+        }
 
         this.city = city;
         this.company = company;
-        this.rand = new Random(12345); // Fixed seed for repeatable tests
+        this.creationProbability = creationProbability;
+        this.rand = new RandomStreams(seed).stream("demand");
         this.missedPickups = 0;
         this.totalPassengersCreated = 0;
+        this.statsListeners = new ArrayList<>();
+        this.trip = new int[TRIP_LENGTH];
     }
 
     /**
-     * Attempt to create a new passenger. If a taxi is available, assign it to
-     * the passenger and add the passenger to the city. Otherwise, increment
-     * the missed pickup counter.
+     * Attempt to create a new passenger and queue their pickup request with
+     * the company's dispatcher. If the queue is full, increment the missed
+     * pickup counter.
      */
     public void act() {
-        if (rand.nextDouble() <= CREATION_PROBABILITY) {
-            Passenger passenger = createPassenger();
-            totalPassengersCreated++;
-            if (company.requestPickup(passenger)) {
-                city.addItem(passenger);
-            } else {
-                missedPickups++;
+        if (demandRate > 0) {
+            for (int i = requestsThisStep(demandRate, rand); i > 0; i--) {
+                request();
             }
+        } else if (rand.nextDouble() <= creationProbability) {
+            request();
+        }
+    }
+
+    /**
+     * Choose how many passengers appear in a step at a demand rate: the
+     * whole part of the rate, and one more with the fractional part as
+     * its probability.
+     *
+     * @param demandRate The mean number of passengers per step.
+     * @param rand       The random stream to draw from.
+     * @return The number of passengers.
+     */
+    static int requestsThisStep(double demandRate, SplittableRandom rand) {
+        int count = (int) demandRate;
+        if (rand.nextDouble() < demandRate - count) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Choose where a passenger is picked up and where they are going: a
+     * random location, and a random destination drawn again until it
+     * differs from the pickup location.
+     *
+     * @param cityWidth  The width of the city.
+     * @param cityHeight The height of the city.
+     * @param rand       The random stream to draw from.
+     * @param trip       Set to the trip's coordinates, at PICKUP_X, PICKUP_Y,
+     *                   DESTINATION_X and DESTINATION_Y.
+     */
+    static void drawTrip(int cityWidth, int cityHeight, SplittableRandom rand, int[] trip) {
+        int pickupX = rand.nextInt(cityWidth);
+        int pickupY = rand.nextInt(cityHeight);
+        int destinationX;
+        int destinationY;
+        do {
+            destinationX = rand.nextInt(cityWidth);
+            destinationY = rand.nextInt(cityHeight);
+        } while (destinationX == pickupX && destinationY == pickupY);
+        trip[PICKUP_X] = pickupX;
+        trip[PICKUP_Y] = pickupY;
+        trip[DESTINATION_X] = destinationX;
+        trip[DESTINATION_Y] = destinationY;
+    }
+
+    /**
+     * Create a passenger and queue their pickup request.
+     */
+    private void request() {
+        Passenger passenger = createPassenger();
+        totalPassengersCreated++;
+        fireStatChanged(Statistic.CREATED, 1);
+        if (!company.getRequestQueue().offer(passenger, this, choosePriority())) {
+            missedPickups++;
+            fireStatChanged(Statistic.MISSED, 1);
         }
     }
 
+    /**
+     * Nothing to do: this source counts its passengers as it creates them.
+     *
+     * @param passenger The passenger taken by the dispatcher.
+     */
+    public void requestTaken(Passenger passenger) {
+    }
+
+    /**
+     * Count a passenger replayed from a demand trace as created, so that
+     * they are reported with the passengers this source creates.
+     *
+     * @param passenger The passenger replayed.
+     */
+    public void requestReplayed(Passenger passenger) {
+        totalPassengersCreated++;
+        fireStatChanged(Statistic.CREATED, 1);
+    }
+
+    /**
+     * Count a passenger for whom no taxi was available as a missed pickup.
+     *
+     * @param passenger The passenger who could not be picked up.
+     */
+    public void requestRejected(Passenger passenger) {
+        missedPickups++;
+        fireStatChanged(Statistic.MISSED, 1);
+    }
+
+    /**
+     * Tell a listener about every change to the number of passengers
+     * created and missed from now on.
+     *
+     * @param listener The listener (must not be null).
+     * @throws NullPointerException if listener is null.
+     */
+    public void addStatsListener(StatsListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("Listener must not be null.");
+        }
+        statsListeners.add(listener);
+    }
+
+    /**
+     * Tell every listener that a figure has changed.
+     *
+     * @param statistic The figure.
+     * @param delta     How much it changed by.
+     */
+    private void fireStatChanged(Statistic statistic, int delta) {
+        for (StatsListener listener : statsListeners) {
+            listener.statChanged(statistic, delta);
+        }
+    }
+
+    /**
+     * Set the mean number of passengers created per step. While it is
+     * positive, it is used instead of the creation probability, so that
+     * more than one passenger may appear in a step.
+     *
+     * @param demandRate The mean number of passengers per step, or 0 to
+     *                   use the creation probability.
+     * @throws IllegalArgumentException if the rate is negative or not finite.
+     */
+    public void setDemandRate(double demandRate) {
+        if (!(demandRate >= 0) || Double.isInfinite(demandRate)) {
+            throw new IllegalArgumentException("Demand rate must be a non-negative number: " + demandRate);
+        }
+        this.demandRate = demandRate;
+    }
+
+    /**
+     * Set the chances that a new request is a premium or accessibility
+     * request, which overtake standard requests while waiting.
+     *
+     * @param premiumProbability       The probability of a premium request.
+     * @param accessibilityProbability The probability of an accessibility request.
+     * @throws IllegalArgumentException if either probability is negative or
+     *                                  they add up to more than 1.
+     */
+    public void setPriorityProbabilities(double premiumProbability, double accessibilityProbability) {
+        if (premiumProbability < 0 || accessibilityProbability < 0
+                || premiumProbability + accessibilityProbability > 1) {
+            throw new IllegalArgumentException("Invalid priority probabilities: "
+                    + premiumProbability + ", " + accessibilityProbability);
+        }
+        this.premiumProbability = premiumProbability;
+        this.accessibilityProbability = accessibilityProbability;
+    }
+
     /**
      * @return The number of passengers who could not be picked up
      * due to lack of available taxis.
@@ -63,6 +252,26 @@ public class PassengerSource implements Actor {
         return totalPassengersCreated;
     }
 
+    /**
+     * Choose the priority of a new request. No random number is drawn when
+     * all requests are standard.
+     *
+     * @return The priority.
+     */
+    private RequestPriority choosePriority() {
+        if (premiumProbability == 0 && accessibilityProbability == 0) {
+            return RequestPriority.STANDARD;
+        }
+        double chance = rand.nextDouble();
+        if (chance < accessibilityProbability) {
+            return RequestPriority.ACCESSIBILITY;
+        }
+        if (chance < accessibilityProbability + premiumProbability) {
+            return RequestPriority.PREMIUM;
+        }
+        return RequestPriority.STANDARD;
+    }
+
     /**
      * Create a new passenger with random pickup and destination
      * locations (ensuring they are different).
@@ -70,16 +279,9 @@ public class PassengerSource implements Actor {
      * @return The newly created Passenger object.
      */
     private Passenger createPassenger() {
-        int cityWidth = city.getWidth();
-        int cityHeight = city.getHeight();
-
-        Location pickupLocation = new Location(rand.nextInt(cityWidth), rand.nextInt(cityHeight));
-        Location destination;
-
-        do {
-            destination = new Location(rand.nextInt(cityWidth), rand.nextInt(cityHeight));
-        } while (pickupLocation.equals(destination));
-
+        drawTrip(city.getWidth(), city.getHeight(), rand, trip);
+        Location pickupLocation = new Location(trip[PICKUP_X], trip[PICKUP_Y]);
+        Location destination = new Location(trip[DESTINATION_X], trip[DESTINATION_Y]);
         return new Passenger(pickupLocation, destination);
     }
 }
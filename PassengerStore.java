@@ -0,0 +1,384 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A compact store of passengers waiting for a vehicle, in priority order.
+ * <p>
+ * Each waiting passenger takes one slot in a set of primitive arrays: the
+ * pickup and destination coordinates packed into a single long, the step
+ * of the request, the request's priority and the handle of their patience
+ * timer. The slots are ordered by an {@link IndexedHeap} keyed on the
+ * request step less the priority's boost, with ties broken by arrival, so
+ * the next passenger to serve is found in O(1) and any passenger can be
+ * removed or reprioritised in O(log n). In all, about 40 bytes per
+ * passenger, so millions can wait without millions of objects. Freed slots
+ * are reused, and {@link Passenger} objects are only created on request.
+ * <p>
+ * The passengers can also be walked in the order they will be served,
+ * one at a time, in O(log k) for each of the first k, so looking at the
+ * front of a long queue does not sort all of it. A walk can instead be
+ * limited to the passengers passing a test, which puts only those in order.
+ * <p>
+ * Coordinates must fit in 16 bits (0 to 65535).
+ */
+public class PassengerStore {
+    public static final int MAX_COORDINATE = 0xFFFF;
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Pickup x, pickup y, destination x and destination y, 16 bits each.
+    private long[] trips;
+    private int[] requestSteps;
+    private byte[] priorities;
+    private int[] timers;
+    // Free slots are chained through nextFree.
+    private int[] nextFree;
+    private int freeSlots;
+    // The waiting slots, in the order they should be served.
+    private final IndexedHeap order;
+    // Counts arrivals, to keep passengers of equal standing in arrival order.
+    private int arrivals;
+    // The number of slots ever used.
+    private int used;
+    private int size;
+    // The positions in the order still to visit in a walk, kept as a heap
+    // on the order's keys. The heap's children are at 2p + 1 and 2p + 2,
+    // and a position is only visited once its parent has been.
+    private int[] walkPositions;
+    private long[] walkKeys;
+    private int walkSize;
+    // Whether the walk holds only the passengers that passed a test, so
+    // a position's children are not visited after it.
+    private boolean walkFiltered;
+
+    /**
+     * Create an empty store.
+     */
+    public PassengerStore() {
+        trips = new long[INITIAL_CAPACITY];
+        requestSteps = new int[INITIAL_CAPACITY];
+        priorities = new byte[INITIAL_CAPACITY];
+        timers = new int[INITIAL_CAPACITY];
+        nextFree = new int[INITIAL_CAPACITY];
+        freeSlots = NONE;
+        order = new IndexedHeap();
+        walkPositions = new int[INITIAL_CAPACITY];
+        walkKeys = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add a waiting passenger.
+     *
+     * @param pickup      The pickup location.
+     * @param destination The destination.
+     * @param requestStep The step in which the pickup was requested.
+     * @param priority    The priority of the request.
+     * @return The passenger's slot.
+     * @throws IllegalArgumentException if a coordinate does not fit in 16 bits.
+     */
+    public int add(Location pickup, Location destination, int requestStep, RequestPriority priority) {
+        long trip = pack(pickup.getX()) << 48 | pack(pickup.getY()) << 32
+                | pack(destination.getX()) << 16 | pack(destination.getY());
+        int slot = allocate();
+        trips[slot] = trip;
+        requestSteps[slot] = requestStep;
+        priorities[slot] = (byte) priority.ordinal();
+        timers[slot] = TimingWheel.NONE;
+        order.insert(slot, orderKey(slot, arrivals++));
+        size++;
+        return slot;
+    }
+
+    /**
+     * Remove a waiting passenger.
+     *
+     * @param slot The passenger's slot.
+     */
+    public void remove(int slot) {
+        order.remove(slot);
+        nextFree[slot] = freeSlots;
+        freeSlots = slot;
+        size--;
+    }
+
+    /**
+     * @return The slot of the passenger to serve next, or -1 if nobody is waiting.
+     */
+    public int first() {
+        return order.peek();
+    }
+
+    /**
+     * Get the slots of all waiting passengers, in the order they will be served.
+     *
+     * @return The slots.
+     */
+    public int[] slotsInOrder() {
+        int[] slots = new int[size];
+        startWalk();
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = nextInWalk();
+        }
+        return slots;
+    }
+
+    /**
+     * Start walking the waiting passengers in the order they will be served.
+     * No passenger may be added, removed or reprioritised until the walk is
+     * over; starting another walk abandons this one.
+     */
+    public void startWalk() {
+        walkSize = 0;
+        walkFiltered = false;
+        if (!order.isEmpty()) {
+            pushWalk(0);
+        }
+    }
+
+    /**
+     * Start walking, in the order they will be served, only the waiting
+     * passengers whose slots pass a test. Every passenger is tested once,
+     * now, and only those that pass are put in order, so a test that few
+     * pass makes for a cheap walk of a long queue. The same rules apply as
+     * to {@link #startWalk()}.
+     *
+     * @param test The test of a passenger's slot.
+     */
+    public void startWalk(IntPredicate test) {
+        walkSize = 0;
+        walkFiltered = true;
+        for (int position = 0; position < order.size(); position++) {
+            if (test.test(order.idAt(position))) {
+                pushWalk(position);
+            }
+        }
+    }
+
+    /**
+     * Take the next passenger in the walk.
+     *
+     * @return The passenger's slot, or -1 if every passenger has been walked.
+     */
+    public int nextInWalk() {
+        if (walkSize == 0) {
+            return NONE;
+        }
+        int position = walkPositions[0];
+        walkSize--;
+        if (walkSize > 0) {
+            walkPositions[0] = walkPositions[walkSize];
+            walkKeys[0] = walkKeys[walkSize];
+            siftDownWalk();
+        }
+        if (!walkFiltered) {
+            int child = 2 * position + 1;
+            if (child < order.size()) {
+                pushWalk(child);
+            }
+            if (child + 1 < order.size()) {
+                pushWalk(child + 1);
+            }
+        }
+        return order.idAt(position);
+    }
+
+    /**
+     * Change the priority of a waiting passenger's request.
+     *
+     * @param slot     A waiting passenger's slot.
+     * @param priority The new priority.
+     */
+    public void setPriority(int slot, RequestPriority priority) {
+        // Keep the arrival order held in the low half of the key.
+        int arrival = (int) order.getKey(slot);
+        priorities[slot] = (byte) priority.ordinal();
+        order.changeKey(slot, orderKey(slot, arrival));
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The priority of the passenger's request.
+     */
+    public RequestPriority getPriority(int slot) {
+        return RequestPriority.values()[priorities[slot]];
+    }
+
+    /**
+     * @return The number of passengers waiting.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether nobody is waiting.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The x-coordinate of the passenger's pickup location.
+     */
+    public int getPickupX(int slot) {
+        return (int) (trips[slot] >>> 48) & MAX_COORDINATE;
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The y-coordinate of the passenger's pickup location.
+     */
+    public int getPickupY(int slot) {
+        return (int) (trips[slot] >>> 32) & MAX_COORDINATE;
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The x-coordinate of the passenger's destination.
+     */
+    public int getDestinationX(int slot) {
+        return (int) (trips[slot] >>> 16) & MAX_COORDINATE;
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The y-coordinate of the passenger's destination.
+     */
+    public int getDestinationY(int slot) {
+        return (int) trips[slot] & MAX_COORDINATE;
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The step in which the passenger requested a pickup.
+     */
+    public int getRequestStep(int slot) {
+        return requestSteps[slot];
+    }
+
+    /**
+     * @param slot A waiting passenger's slot.
+     * @return The handle of the passenger's patience timer, or -1 if none.
+     */
+    public int getTimer(int slot) {
+        return timers[slot];
+    }
+
+    /**
+     * @param slot  A waiting passenger's slot.
+     * @param timer The handle of the passenger's patience timer, or -1 if none.
+     */
+    public void setTimer(int slot, int timer) {
+        timers[slot] = timer;
+    }
+
+    /**
+     * Create a Passenger object for a waiting passenger.
+     *
+     * @param slot A waiting passenger's slot.
+     * @return The passenger.
+     */
+    public Passenger materialise(int slot) {
+        return new Passenger(new Location(getPickupX(slot), getPickupY(slot)),
+                new Location(getDestinationX(slot), getDestinationY(slot)));
+    }
+
+    /**
+     * Work out where a passenger stands in the order: by request step less
+     * the priority's boost, then by arrival.
+     *
+     * @param slot    A waiting passenger's slot.
+     * @param arrival The passenger's arrival count.
+     * @return The passenger's key in the order.
+     */
+    private long orderKey(int slot, int arrival) {
+        long standing = (long) requestSteps[slot] - getPriority(slot).getBoost();
+        return standing << 32 | (arrival & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Add a position in the order to those still to visit in the walk.
+     *
+     * @param position The position.
+     */
+    private void pushWalk(int position) {
+        if (walkSize == walkPositions.length) {
+            walkPositions = Arrays.copyOf(walkPositions, walkSize * 2);
+            walkKeys = Arrays.copyOf(walkKeys, walkSize * 2);
+        }
+        long key = order.getKey(order.idAt(position));
+        int i = walkSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (walkKeys[parent] <= key) {
+                break;
+            }
+            walkPositions[i] = walkPositions[parent];
+            walkKeys[i] = walkKeys[parent];
+            i = parent;
+        }
+        walkPositions[i] = position;
+        walkKeys[i] = key;
+    }
+
+    /**
+     * Restore the walk's heap after its first entry has been replaced.
+     */
+    private void siftDownWalk() {
+        int position = walkPositions[0];
+        long key = walkKeys[0];
+        int i = 0;
+        int half = walkSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < walkSize && walkKeys[child + 1] < walkKeys[child]) {
+                child++;
+            }
+            if (key <= walkKeys[child]) {
+                break;
+            }
+            walkPositions[i] = walkPositions[child];
+            walkKeys[i] = walkKeys[child];
+            i = child;
+        }
+        walkPositions[i] = position;
+        walkKeys[i] = key;
+    }
+
+    /**
+     * Take a slot from the free chain, or a new one, growing the arrays if
+     * they are full.
+     *
+     * @return An unused slot.
+     */
+    private int allocate() {
+        if (freeSlots != NONE) {
+            int slot = freeSlots;
+            freeSlots = nextFree[slot];
+            return slot;
+        }
+        if (used == trips.length) {
+            int capacity = trips.length * 2;
+            trips = Arrays.copyOf(trips, capacity);
+            requestSteps = Arrays.copyOf(requestSteps, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            timers = Arrays.copyOf(timers, capacity);
+            nextFree = Arrays.copyOf(nextFree, capacity);
+        }
+        return used++;
+    }
+
+    /**
+     * Check that a coordinate fits in 16 bits.
+     *
+     * @param coordinate The coordinate.
+     * @return The coordinate, as a long.
+     */
+    private static long pack(int coordinate) {
+        if (coordinate < 0 || coordinate > MAX_COORDINATE) {
+            throw new IllegalArgumentException("Coordinate out of range for passenger store: " + coordinate);
+        }
+        return coordinate;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.SplittableRandom;
+
+/**
+ * Measure the cost of the waiting-passenger store's priority operations
+ * with 10^5 and 10^6 passengers waiting: adding a request, serving the
+ * highest-priority request, removing an arbitrary request (as when a
+ * passenger gives up) and raising a request's priority.
+ */
+public class PendingRequestBenchmark {
+    private static final int[] SIZES = {100_000, 1_000_000};
+    private static final int OPERATIONS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * Run the benchmark and print the mean cost of each operation.
+     *
+     * @param args Not used.
+     */
+    public static void main(String[] args) {
+        for (int round = 1; round <= ROUNDS; round++) {
+            // The first rounds warm up the JIT; the last is the result.
+            boolean report = round == ROUNDS;
+            for (int size : SIZES) {
+                run(size, report);
+            }
+        }
+    }
+
+    private static void run(int size, boolean report) {
+        SplittableRandom rand = new SplittableRandom(12345);
+        PassengerStore store = new PassengerStore();
+        int[] slots = new int[size];
+        int step = 0;
+        for (int i = 0; i < size; i++) {
+            slots[i] = store.add(randomLocation(rand), randomLocation(rand), step++, randomPriority(rand));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int slot = store.first();
+            store.remove(slot);
+            store.add(randomLocation(rand), randomLocation(rand), step++, randomPriority(rand));
+        }
+        long pollAndAdd = System.nanoTime() - start;
+
+        // Slots are reused, so every slot in 0..size-1 is waiting.
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int slot = rand.nextInt(size);
+            store.remove(slot);
+            store.add(randomLocation(rand), randomLocation(rand), step++, RequestPriority.STANDARD);
+        }
+        long removeAndAdd = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int slot = rand.nextInt(size);
+            store.setPriority(slot, store.getPriority(slot) == RequestPriority.STANDARD
+                    ? RequestPriority.PREMIUM : RequestPriority.STANDARD);
+        }
+        long reprioritise = System.nanoTime() - start;
+
+        if (report) {
+            System.out.printf("%,9d waiting: serve+add %6.1f ns  remove+add %6.1f ns  reprioritise %6.1f ns%n",
+                    size, (double) pollAndAdd / OPERATIONS, (double) removeAndAdd / OPERATIONS,
+                    (double) reprioritise / OPERATIONS);
+        }
+    }
+
+    private static Location randomLocation(SplittableRandom rand) {
+        return new Location(rand.nextInt(10_000), rand.nextInt(10_000));
+    }
+
+    private static RequestPriority randomPriority(SplittableRandom rand) {
+        int chance = rand.nextInt(100);
+        if (chance < 5) {
+            return RequestPriority.ACCESSIBILITY;
+        }
+        return chance < 20 ? RequestPriority.PREMIUM : RequestPriority.STANDARD;
+    }
+}
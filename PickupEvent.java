@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event covering a vehicle picking up a passenger.
+ */
+@Name("taxi.Pickup")
+@Label("Pickup")
+@Category("Taxi Simulation")
+@Description("A vehicle picking up a passenger at their pickup location")
+public class PickupEvent extends Event {
+    @Label("Step")
+    int step;
+
+    @Label("Vehicle Id")
+    int vehicleId;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+}
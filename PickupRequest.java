@@ -0,0 +1,59 @@
+public class PickupRequest {
+    private final Passenger passenger;
+    private final RequestProducer producer;
+    private final RequestPriority priority;
+    // The time at which the request was published, from System.nanoTime().
+    private final long publishedNanos;
+
+    /**
+     * Create a request for a passenger to be picked up.
+     *
+     * @param passenger The passenger requesting pickup (must not be null).
+     * @param producer  The producer publishing the request (must not be null).
+     * @param priority  The priority of the request (must not be null).
+     * @throws NullPointerException if passenger, producer or priority is null.
+     */
+    public PickupRequest(Passenger passenger, RequestProducer producer, RequestPriority priority) {
+        if (passenger == null) {
+            throw new NullPointerException("Passenger must not be null.");
+        }
+        if (producer == null) {
+            throw new NullPointerException("Producer must not be null.");
+        }
+        if (priority == null) {
+            throw new NullPointerException("Priority must not be null.");
+        }
+        this.passenger = passenger;
+        this.producer = producer;
+        this.priority = priority;
+        publishedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The passenger requesting pickup.
+     */
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    /**
+     * @return The producer that published the request.
+     */
+    public RequestProducer getProducer() {
+        return producer;
+    }
+
+    /**
+     * @return The priority of the request.
+     */
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return The time at which the request was published, from System.nanoTime().
+     */
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.SplittableRandom;
+
+/**
+ * A seeded hierarchy of independent random number streams.
+ * <p>
+ * Every stream is identified by a name and an index, such as
+ * {@code ("vehicle", 42)}, and is derived from the root seed and its key
+ * alone by mixing them through the SplitMix64 finaliser. A stream is
+ * therefore the same however many other streams have been made and in
+ * whatever order, so actors can each own a stream and run on any thread in
+ * any order without sharing random state or changing the results. Child
+ * hierarchies, for example one per region, are derived in the same way.
+ */
+public class RandomStreams {
+    // The golden ratio, used to spread consecutive indices apart.
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    /**
+     * Create a hierarchy of streams from a root seed.
+     *
+     * @param seed The root seed.
+     */
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get the stream with a given name.
+     *
+     * @param name The stream's name (must not be null).
+     * @return A new generator at the start of the stream.
+     * @throws NullPointerException if name is null.
+     */
+    public SplittableRandom stream(String name) {
+        return stream(name, 0);
+    }
+
+    /**
+     * Get one of a family of streams, such as the stream of one vehicle.
+     *
+     * @param name  The family's name (must not be null).
+     * @param index The stream's index within the family.
+     * @return A new generator at the start of the stream.
+     * @throws NullPointerException if name is null.
+     */
+    public SplittableRandom stream(String name, long index) {
+        return new SplittableRandom(derive(name, index));
+    }
+
+    /**
+     * Get a child hierarchy, whose streams are independent of this one's.
+     *
+     * @param name  The child's name (must not be null).
+     * @param index The child's index, such as a region number.
+     * @return The child hierarchy.
+     * @throws NullPointerException if name is null.
+     */
+    public RandomStreams child(String name, long index) {
+        return new RandomStreams(derive(name, index) ^ GOLDEN_GAMMA);
+    }
+
+    /**
+     * @return The root seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Derive the seed of a stream from the root seed and the stream's key.
+     */
+    private long derive(String name, long index) {
+        if (name == null) {
+            throw new NullPointerException("Stream name must not be null.");
+        }
+        // A 64-bit FNV-1a hash of the name, which unlike hashCode() uses all the bits.
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(mix(seed ^ mix(hash)) + GOLDEN_GAMMA * (index + 1));
+    }
+
+    /**
+     * The SplitMix64 finaliser, which spreads every input bit over the output.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,21 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event covering the drawing of one frame of the GUI.
+ */
+@Name("taxi.RenderFrame")
+@Label("Render Frame")
+@Category("Taxi Simulation")
+@Description("Drawing the city and updating the statistics label")
+public class RenderFrameEvent extends Event {
+    @Label("Items")
+    int items;
+
+    @Label("Density Map")
+    @Description("Whether items were drawn as a density map rather than images")
+    boolean densityMap;
+}
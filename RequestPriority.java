@@ -0,0 +1,24 @@
+/**
+ * The priority of a pickup request. A request with a boost is ordered among
+ * waiting passengers as if it had been made that many steps earlier, so it
+ * overtakes more recent standard requests while standard requests that
+ * have waited longer than the boost still come first.
+ */
+public enum RequestPriority {
+    STANDARD(0),
+    PREMIUM(50),
+    ACCESSIBILITY(100);
+
+    private final int boost;
+
+    RequestPriority(int boost) {
+        this.boost = boost;
+    }
+
+    /**
+     * @return The number of steps the request is moved forward by.
+     */
+    public int getBoost() {
+        return boost;
+    }
+}
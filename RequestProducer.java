@@ -0,0 +1,17 @@
+public interface RequestProducer {
+    /**
+     * Called by the dispatcher when it takes a passenger published by this
+     * producer from the queue, on the simulation's thread.
+     *
+     * @param passenger The passenger taken.
+     */
+    public void requestTaken(Passenger passenger);
+
+    /**
+     * Called by the dispatcher when no vehicle could be assigned to a
+     * passenger published by this producer.
+     *
+     * @param passenger The passenger who could not be picked up.
+     */
+    public void requestRejected(Passenger passenger);
+}
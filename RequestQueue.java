@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded queue of pickup requests between any number of producers and
+ * the company's dispatcher.
+ * <p>
+ * Producers running on their own threads use {@link #publish}, which waits
+ * while the queue is full, so a producer can never run further ahead of
+ * dispatch than the queue's capacity. Producers running on the simulation
+ * thread must use {@link #offer} instead, since waiting there would stop
+ * the dispatcher that empties the queue.
+ */
+public class RequestQueue {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private final BlockingQueue<PickupRequest> queue;
+    private final List<Thread> producers;
+    // The first exception a producer's thread stopped with, until reported.
+    private final AtomicReference<RuntimeException> producerFailure;
+
+    // Statistics for queue depth and request latency.
+    private int peakDepth;
+    private final AtomicLong rejectedOffers;
+    private long dispatchedRequests;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * Create a request queue holding at most the given number of requests.
+     *
+     * @param capacity The capacity of the queue.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public RequestQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        producers = new ArrayList<>();
+        producerFailure = new AtomicReference<>();
+        rejectedOffers = new AtomicLong();
+    }
+
+    /**
+     * Publish a request, waiting while the queue is full.
+     *
+     * @param passenger The passenger requesting pickup.
+     * @param producer  The producer publishing the request.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void publish(Passenger passenger, RequestProducer producer) throws InterruptedException {
+        publish(passenger, producer, RequestPriority.STANDARD);
+    }
+
+    /**
+     * Publish a request with a given priority, waiting while the queue is full.
+     *
+     * @param passenger The passenger requesting pickup.
+     * @param producer  The producer publishing the request.
+     * @param priority  The priority of the request.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void publish(Passenger passenger, RequestProducer producer, RequestPriority priority)
+            throws InterruptedException {
+        queue.put(new PickupRequest(passenger, producer, priority));
+    }
+
+    /**
+     * Publish a request if there is room for it.
+     *
+     * @param passenger The passenger requesting pickup.
+     * @param producer  The producer publishing the request.
+     * @return true if the request was queued, false if the queue was full.
+     */
+    public boolean offer(Passenger passenger, RequestProducer producer) {
+        return offer(passenger, producer, RequestPriority.STANDARD);
+    }
+
+    /**
+     * Publish a request with a given priority if there is room for it.
+     *
+     * @param passenger The passenger requesting pickup.
+     * @param producer  The producer publishing the request.
+     * @param priority  The priority of the request.
+     * @return true if the request was queued, false if the queue was full.
+     */
+    public boolean offer(Passenger passenger, RequestProducer producer, RequestPriority priority) {
+        if (queue.offer(new PickupRequest(passenger, producer, priority))) {
+            return true;
+        }
+        rejectedOffers.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Move up to a given number of queued requests into a collection,
+     * oldest first.
+     *
+     * @param batch       The collection to receive the requests.
+     * @param maxRequests The most requests to move.
+     * @return The number of requests moved.
+     */
+    public int drainTo(Collection<PickupRequest> batch, int maxRequests) {
+        peakDepth = Math.max(peakDepth, queue.size());
+        return queue.drainTo(batch, maxRequests);
+    }
+
+    /**
+     * Record that a request has been dispatched, measuring the time since it
+     * was published. Called by the dispatcher.
+     *
+     * @param request The dispatched request.
+     */
+    public void recordDispatched(PickupRequest request) {
+        long latency = System.nanoTime() - request.getPublishedNanos();
+        dispatchedRequests++;
+        totalLatencyNanos += latency;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+    }
+
+    /**
+     * Start a producer on its own virtual thread. The producer should
+     * publish with {@link #publish} and stop when interrupted. If it stops
+     * with an exception, {@link #checkProducers} reports it.
+     *
+     * @param name     The name of the producer's thread.
+     * @param producer The producer's work.
+     * @return The producer's thread.
+     */
+    public Thread startProducer(String name, Runnable producer) {
+        Thread thread = Thread.ofVirtual().name(name).start(() -> {
+            try {
+                producer.run();
+            } catch (RuntimeException e) {
+                producerFailure.compareAndSet(null, e);
+            }
+        });
+        synchronized (producers) {
+            producers.add(thread);
+        }
+        return thread;
+    }
+
+    /**
+     * Report a producer that has stopped with an exception, so that the
+     * simulation does not carry on without its requests. Called by the
+     * dispatcher every step.
+     *
+     * @throws IllegalStateException if a producer has failed, with the
+     *                               producer's exception as its cause.
+     */
+    public void checkProducers() {
+        RuntimeException failure = producerFailure.getAndSet(null);
+        if (failure != null) {
+            throw new IllegalStateException("Request producer failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Interrupt all producers started by this queue.
+     */
+    public void shutdown() {
+        synchronized (producers) {
+            for (Thread producer : producers) {
+                producer.interrupt();
+            }
+            producers.clear();
+        }
+    }
+
+    /**
+     * @return The number of requests waiting to be dispatched.
+     */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return The largest number of requests seen waiting at a dispatch.
+     */
+    public int getPeakDepth() {
+        return peakDepth;
+    }
+
+    /**
+     * @return The number of offers turned away because the queue was full.
+     */
+    public long getRejectedOffers() {
+        return rejectedOffers.get();
+    }
+
+    /**
+     * @return The number of requests dispatched.
+     */
+    public long getDispatchedRequests() {
+        return dispatchedRequests;
+    }
+
+    /**
+     * @return The mean time from publication to dispatch, in nanoseconds.
+     */
+    public long getMeanLatencyNanos() {
+        return dispatchedRequests == 0 ? 0 : totalLatencyNanos / dispatchedRequests;
+    }
+
+    /**
+     * @return The longest time from publication to dispatch, in nanoseconds.
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+}
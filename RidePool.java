@@ -0,0 +1,564 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Match new requests to taxis that already have passengers aboard, so a
+ * taxi with seats to spare can share its trip.
+ * <p>
+ * A taxi joins the pool when it picks up the passenger who hailed it, and
+ * leaves when its last passenger is dropped off or every seat is spoken
+ * for. Taxis in the pool are kept in a uniform grid by where they are now,
+ * and move between cells as they drive. A new passenger may only join a
+ * taxi that can reach them within the wait limit, so a match searches just
+ * the cells within that distance of the pickup, however large the fleet.
+ * <p>
+ * For each taxi found, every place the new pickup and drop-off could go in
+ * its route is tried, and the one that adds least to the route is kept,
+ * provided every passenger still waiting is picked up within the wait
+ * limit and no passenger's ride, from pickup to drop-off, is longer than
+ * the direct trip by more than the detour limit. A route holds at most two
+ * stops per seat, so trying every insertion is cheap.
+ */
+public class RidePool {
+    private static final int NONE = -1;
+    // The fewest grid cells the city is divided into, however small the fleet.
+    private static final int MIN_CELLS = 4096;
+
+    private final int seats;
+    private final int detour;
+    private final int wait;
+    private final EtaService etaService;
+
+    private final int cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    // The taxis in each cell, chained through next and previous.
+    private final int[] heads;
+    private final int[] next;
+    private final int[] previous;
+    // Per vehicle id: its cell, or NONE if it is not in the pool, and
+    // where it is, kept up to date while it is in the pool.
+    private final int[] cellOf;
+    private final int[] taxiX;
+    private final int[] taxiY;
+    private final Taxi[] taxis;
+    // Per cell: the number of taxis in the pool in it or next to it.
+    private final int[] nearby;
+    // The number of taxis in the pool.
+    private int open;
+
+    // The passengers aboard or on their way to a shared taxi.
+    private final Map<Passenger, Rider> riders;
+
+    // The route of the taxi being tried, loaded once so that every
+    // insertion can be timed without looking anything up: where each stop
+    // is, the latest step it may be made, or NONE for the drop-off of a
+    // passenger not yet picked up, whose pickup is then at pickupOf, and
+    // the length of each passenger's direct ride.
+    private final int[] routeX;
+    private final int[] routeY;
+    private final int[] routeLatest;
+    private final int[] routePickupOf;
+    private final int[] routeDirect;
+    // When each stop is made on the route as it is, and on a trial route.
+    private final int[] routeSteps;
+    private final int[] trialSteps;
+
+    // The taxi found by the last search, and where in its route the new
+    // passenger's pickup and drop-off go, until they are booked.
+    private Taxi found;
+    private int foundPickupIndex;
+    private int foundDropoffIndex;
+
+    /**
+     * The times that bound a passenger's shared trip.
+     */
+    private static class Rider {
+        // The step in which the passenger asked for a pickup.
+        final int requestStep;
+        // The latest step by which they must be picked up.
+        final int latestPickup;
+        // When they were picked up and must be dropped off by, or NONE before pickup.
+        int pickupStep = NONE;
+        int latestDropoff = NONE;
+
+        Rider(int requestStep, int latestPickup) {
+            this.requestStep = requestStep;
+            this.latestPickup = latestPickup;
+        }
+    }
+
+    /**
+     * Create a pool for a fleet of taxis.
+     *
+     * @param cityWidth  The city's width.
+     * @param cityHeight The city's height.
+     * @param fleetSize  The number of vehicles, whose ids run from 0.
+     * @param seats      The most passengers a taxi carries at once.
+     * @param detour     The most steps sharing may add to any passenger's ride.
+     * @param wait       The most steps a passenger joining a taxi waits for it.
+     * @param etaService The service to tell when a taxi's route changes.
+     * @throws IllegalArgumentException if seats is less than 2 or either limit is negative.
+     */
+    public RidePool(int cityWidth, int cityHeight, int fleetSize, int seats, int detour, int wait,
+                    EtaService etaService) {
+        if (seats < 2) {
+            throw new IllegalArgumentException("A shared taxi needs at least 2 seats: " + seats);
+        }
+        if (detour < 0 || wait < 0) {
+            throw new IllegalArgumentException("Invalid pooling limits: " + detour + ", " + wait);
+        }
+        this.seats = seats;
+        this.detour = detour;
+        this.wait = wait;
+        this.etaService = etaService;
+
+        // Cells are at least as wide as the wait limit, so a match looks at
+        // no more than the nine cells around the pickup, and otherwise as
+        // small as the larger of the fleet and MIN_CELLS allows, so the
+        // nine cells hold few taxis out of reach.
+        double area = (double) cityWidth * cityHeight;
+        int sparse = (int) Math.ceil(Math.sqrt(area / Math.max(MIN_CELLS, fleetSize)));
+        cellSize = Math.max(1, Math.max(wait, sparse));
+        cellsX = (cityWidth + cellSize - 1) / cellSize;
+        cellsY = (cityHeight + cellSize - 1) / cellSize;
+        heads = new int[cellsX * cellsY];
+        next = new int[fleetSize];
+        previous = new int[fleetSize];
+        cellOf = new int[fleetSize];
+        taxiX = new int[fleetSize];
+        taxiY = new int[fleetSize];
+        taxis = new Taxi[fleetSize];
+        nearby = new int[cellsX * cellsY];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(cellOf, NONE);
+        riders = new HashMap<>();
+
+        int stops = 2 * seats;
+        routeX = new int[stops];
+        routeY = new int[stops];
+        routeLatest = new int[stops];
+        routePickupOf = new int[stops];
+        routeDirect = new int[stops];
+        routeSteps = new int[stops];
+        trialSteps = new int[stops];
+    }
+
+    /**
+     * A taxi has picked up the passenger who hailed it and may now share
+     * its trip.
+     *
+     * @param taxi        The taxi.
+     * @param passenger   The passenger.
+     * @param requestStep The step in which the passenger asked for a pickup.
+     * @param step        The current step.
+     */
+    public void tripStarted(Taxi taxi, Passenger passenger, int requestStep, int step) {
+        Rider rider = new Rider(requestStep, step);
+        riders.put(passenger, rider);
+        pickedUp(passenger, step);
+        update(taxi);
+    }
+
+    /**
+     * Find a taxi in the pool to share with a new passenger and add them to
+     * its route.
+     *
+     * @param passenger   The passenger.
+     * @param requestStep The step in which the passenger asked for a pickup.
+     * @param step        The current step.
+     * @return The taxi, or null if no taxi can take the passenger within the limits.
+     */
+    public Taxi match(Passenger passenger, int requestStep, int step) {
+        Location pickup = passenger.getPickupLocation();
+        Location destination = passenger.getDestination();
+        Taxi taxi = find(pickup.getX(), pickup.getY(), destination.getX(), destination.getY(), step);
+        if (taxi != null) {
+            book(passenger, requestStep, step);
+        }
+        return taxi;
+    }
+
+    /**
+     * Find the taxi in the pool that could best share with a passenger
+     * making a trip, without booking them. Works on bare coordinates, so a
+     * passenger need not exist as an object to be tried.
+     *
+     * @param pickupX      The x-coordinate of the pickup location.
+     * @param pickupY      The y-coordinate of the pickup location.
+     * @param destinationX The x-coordinate of the destination.
+     * @param destinationY The y-coordinate of the destination.
+     * @param step         The current step.
+     * @return The taxi, or null if no taxi can take the passenger within the limits.
+     */
+    public Taxi find(int pickupX, int pickupY, int destinationX, int destinationY, int step) {
+        int direct = Math.max(1, Math.max(Math.abs(destinationX - pickupX), Math.abs(destinationY - pickupY)));
+        int cellX = Math.min(cellsX - 1, pickupX / cellSize);
+        int cellY = Math.min(cellsY - 1, pickupY / cellSize);
+        int bestId = NONE;
+        int bestCost = Integer.MAX_VALUE;
+        for (int cy = Math.max(0, cellY - 1); cy <= Math.min(cellsY - 1, cellY + 1); cy++) {
+            for (int cx = Math.max(0, cellX - 1); cx <= Math.min(cellsX - 1, cellX + 1); cx++) {
+                for (int id = heads[cy * cellsX + cx]; id != NONE; id = next[id]) {
+                    if (Math.max(Math.abs(taxiX[id] - pickupX), Math.abs(taxiY[id] - pickupY)) > wait) {
+                        continue;
+                    }
+                    int stops = loadRoute(id, step);
+                    int current = stops == 0 ? step : routeSteps[stops - 1];
+                    for (int pickupIndex = 0; pickupIndex <= stops; pickupIndex++) {
+                        // The pickup cannot be made before the stop ahead of it.
+                        if (pickupIndex > 0 && routeSteps[pickupIndex - 1] > step + wait) {
+                            break;
+                        }
+                        for (int dropoffIndex = pickupIndex; dropoffIndex <= stops; dropoffIndex++) {
+                            int finish = finishStep(taxiX[id], taxiY[id], stops, pickupX, pickupY,
+                                    destinationX, destinationY, direct, pickupIndex, dropoffIndex, step);
+                            if (finish == NONE) {
+                                continue;
+                            }
+                            int cost = finish - current;
+                            if (cost < bestCost || cost == bestCost && id < bestId) {
+                                bestId = id;
+                                bestCost = cost;
+                                foundPickupIndex = pickupIndex;
+                                foundDropoffIndex = dropoffIndex;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        found = bestId == NONE ? null : taxis[bestId];
+        return found;
+    }
+
+    /**
+     * Book a passenger into the taxi just found for their trip by
+     * {@link #find}, at the places in its route found for them.
+     *
+     * @param passenger   The passenger, making the trip that was tried.
+     * @param requestStep The step in which the passenger asked for a pickup.
+     * @param step        The current step, as given to find.
+     * @throws IllegalStateException if the last search found no taxi, or
+     *                               it has been booked already.
+     */
+    public void book(Passenger passenger, int requestStep, int step) {
+        if (found == null) {
+            throw new IllegalStateException("No taxi was found to book");
+        }
+        Taxi taxi = found;
+        found = null;
+        taxi.addRider(passenger, foundPickupIndex, foundDropoffIndex);
+        riders.put(passenger, new Rider(requestStep, step + wait));
+        update(taxi);
+        etaService.routeChanged(taxi, taxi.getRoute());
+    }
+
+    /**
+     * Check, in constant time, whether any taxi in the pool is in or next
+     * to the grid cell of a pickup location. Unless one is, {@link #find}
+     * cannot find a taxi for a passenger picked up there, so most waiting
+     * passengers can be ruled out without being tried.
+     *
+     * @param x The x-coordinate of the pickup location.
+     * @param y The y-coordinate of the pickup location.
+     * @return false if no taxi in the pool can reach the pickup within the wait limit.
+     */
+    public boolean hasTaxiNear(int x, int y) {
+        return nearby[cellOf(x, y)] > 0;
+    }
+
+    /**
+     * @return Whether no taxi is in the pool.
+     */
+    public boolean isEmpty() {
+        return open == 0;
+    }
+
+    /**
+     * A passenger in the pool has been picked up.
+     *
+     * @param passenger The passenger.
+     * @param step      The current step.
+     */
+    public void pickedUp(Passenger passenger, int step) {
+        Rider rider = riders.get(passenger);
+        rider.pickupStep = step;
+        rider.latestDropoff = step + directSteps(passenger) + detour;
+    }
+
+    /**
+     * A passenger in the pool has been dropped off.
+     *
+     * @param taxi      The taxi that carried them.
+     * @param passenger The passenger.
+     */
+    public void droppedOff(Taxi taxi, Passenger passenger) {
+        riders.remove(passenger);
+        update(taxi);
+        if (!taxi.isFree()) {
+            etaService.routeChanged(taxi, taxi.getRoute());
+        }
+    }
+
+    /**
+     * A taxi has moved. If it is in the pool and has entered a new cell,
+     * move it there in the grid.
+     *
+     * @param taxi The taxi.
+     */
+    public void moved(Taxi taxi) {
+        int id = taxi.getId();
+        if (cellOf[id] == NONE) {
+            return;
+        }
+        Location at = taxi.getLocation();
+        taxiX[id] = at.getX();
+        taxiY[id] = at.getY();
+        if (cellOf[id] != cellOf(at.getX(), at.getY())) {
+            unlink(id);
+            link(taxi);
+        }
+    }
+
+    /**
+     * @param passenger A passenger aboard or on their way to a taxi in the pool.
+     * @return The step in which the passenger asked for a pickup, or -1 if
+     * they are not in the pool.
+     */
+    public int getRequestStep(Passenger passenger) {
+        Rider rider = riders.get(passenger);
+        return rider == null ? NONE : rider.requestStep;
+    }
+
+    /**
+     * @param passenger A passenger aboard or on their way to a taxi in the pool.
+     * @return The step in which the passenger was picked up, or -1 if they
+     * have not been or are not in the pool.
+     */
+    public int getPickupStep(Passenger passenger) {
+        Rider rider = riders.get(passenger);
+        return rider == null ? NONE : rider.pickupStep;
+    }
+
+    /**
+     * @return The most passengers a taxi carries at once.
+     */
+    public int getSeats() {
+        return seats;
+    }
+
+    /**
+     * @return The most steps sharing may add to any passenger's ride.
+     */
+    public int getDetour() {
+        return detour;
+    }
+
+    /**
+     * @return The most steps a passenger joining a taxi waits for it.
+     */
+    public int getWait() {
+        return wait;
+    }
+
+    /**
+     * Load a taxi's route into the route arrays and time it as it stands.
+     * The first stop takes at least a step to reach; later stops at the
+     * same place are made in the same step, as the taxi does.
+     *
+     * @param id   The taxi's id.
+     * @param step The current step.
+     * @return The number of stops.
+     */
+    private int loadRoute(int id, int step) {
+        Taxi taxi = taxis[id];
+        List<RouteStop> route = taxi.getRoute();
+        int stops = route.size();
+        Location at = taxi.getLocation();
+        int x = at.getX();
+        int y = at.getY();
+        int time = step;
+        for (int k = 0; k < stops; k++) {
+            RouteStop stop = route.get(k);
+            Passenger passenger = stop.getPassenger();
+            Location location = stop.getLocation();
+            Rider rider = riders.get(passenger);
+            routeX[k] = location.getX();
+            routeY[k] = location.getY();
+            routeDirect[k] = directSteps(passenger);
+            routePickupOf[k] = NONE;
+            if (stop.isPickup()) {
+                routeLatest[k] = rider.latestPickup;
+            } else if (rider.pickupStep != NONE) {
+                routeLatest[k] = rider.latestDropoff;
+            } else {
+                routeLatest[k] = NONE;
+                for (int j = k - 1; j >= 0; j--) {
+                    if (route.get(j).getPassenger() == passenger) {
+                        routePickupOf[k] = j;
+                        break;
+                    }
+                }
+            }
+            int distance = Math.max(Math.abs(routeX[k] - x), Math.abs(routeY[k] - y));
+            time += k == 0 ? Math.max(1, distance) : distance;
+            routeSteps[k] = time;
+            x = routeX[k];
+            y = routeY[k];
+        }
+        return stops;
+    }
+
+    /**
+     * Work out when a taxi would finish the loaded route with a new
+     * passenger's pickup and drop-off inserted, checking every passenger's
+     * limits on the way.
+     *
+     * @param taxiX        The x-coordinate of the taxi.
+     * @param taxiY        The y-coordinate of the taxi.
+     * @param stops        The number of stops on the loaded route.
+     * @param pickupX      The x-coordinate of the new passenger's pickup.
+     * @param pickupY      The y-coordinate of the new passenger's pickup.
+     * @param destinationX The x-coordinate of the new passenger's destination.
+     * @param destinationY The y-coordinate of the new passenger's destination.
+     * @param direct       The steps the new passenger's ride takes without sharing.
+     * @param pickupIndex  Where the pickup goes in the route.
+     * @param dropoffIndex Where the drop-off goes in the route.
+     * @param step         The current step.
+     * @return The step in which the route would end, or NONE if a limit would be broken.
+     */
+    private int finishStep(int taxiX, int taxiY, int stops, int pickupX, int pickupY,
+                           int destinationX, int destinationY, int direct,
+                           int pickupIndex, int dropoffIndex, int step) {
+        int x = taxiX;
+        int y = taxiY;
+        int time = step;
+        int joiningPickupStep = 0;
+        for (int k = 0, r = 0; k < stops + 2; k++) {
+            int stopX;
+            int stopY;
+            int latest;
+            if (k == pickupIndex) {
+                stopX = pickupX;
+                stopY = pickupY;
+                latest = step + wait;
+            } else if (k == dropoffIndex + 1) {
+                stopX = destinationX;
+                stopY = destinationY;
+                latest = joiningPickupStep + direct + detour;
+            } else {
+                stopX = routeX[r];
+                stopY = routeY[r];
+                latest = routeLatest[r] != NONE ? routeLatest[r]
+                        : trialSteps[routePickupOf[r]] + routeDirect[r] + detour;
+            }
+            int distance = Math.max(Math.abs(stopX - x), Math.abs(stopY - y));
+            time += k == 0 ? Math.max(1, distance) : distance;
+            if (time > latest) {
+                return NONE;
+            }
+            if (k == pickupIndex) {
+                joiningPickupStep = time;
+            } else if (k != dropoffIndex + 1) {
+                trialSteps[r++] = time;
+            }
+            x = stopX;
+            y = stopY;
+        }
+        return time;
+    }
+
+    /**
+     * @return The steps a passenger's ride takes without sharing.
+     */
+    private static int directSteps(Passenger passenger) {
+        return Math.max(1, passenger.getPickupLocation().distance(passenger.getDestination()));
+    }
+
+    /**
+     * Put a taxi in the pool if it is carrying passengers and has a seat no
+     * one is yet booked into, and take it out otherwise.
+     */
+    private void update(Taxi taxi) {
+        int booked = 0;
+        for (RouteStop stop : taxi.getRoute()) {
+            if (!stop.isPickup()) {
+                booked++;
+            }
+        }
+        boolean hasSeat = booked > 0 && booked < seats;
+        int id = taxi.getId();
+        if (hasSeat && cellOf[id] == NONE) {
+            taxis[id] = taxi;
+            link(taxi);
+            open++;
+        } else if (!hasSeat && cellOf[id] != NONE) {
+            unlink(id);
+            cellOf[id] = NONE;
+            taxis[id] = null;
+            open--;
+        }
+    }
+
+    /**
+     * @return The grid cell of a location.
+     */
+    private int cellOf(int x, int y) {
+        int cellX = Math.min(cellsX - 1, x / cellSize);
+        int cellY = Math.min(cellsY - 1, y / cellSize);
+        return cellY * cellsX + cellX;
+    }
+
+    /**
+     * Put a taxi in the grid cell where it is.
+     */
+    private void link(Taxi taxi) {
+        int id = taxi.getId();
+        Location at = taxi.getLocation();
+        taxiX[id] = at.getX();
+        taxiY[id] = at.getY();
+        int cell = cellOf(at.getX(), at.getY());
+        countNearby(cell, 1);
+        int head = heads[cell];
+        previous[id] = NONE;
+        next[id] = head;
+        if (head != NONE) {
+            previous[head] = id;
+        }
+        heads[cell] = id;
+        cellOf[id] = cell;
+    }
+
+    /**
+     * Take a taxi out of its grid cell.
+     */
+    private void unlink(int id) {
+        countNearby(cellOf[id], -1);
+        int before = previous[id];
+        int after = next[id];
+        if (before == NONE) {
+            heads[cellOf[id]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    /**
+     * Add to the count of nearby taxis of a cell and the cells around it.
+     */
+    private void countNearby(int cell, int change) {
+        int cellX = cell % cellsX;
+        int cellY = cell / cellsX;
+        for (int cy = Math.max(0, cellY - 1); cy <= Math.min(cellsY - 1, cellY + 1); cy++) {
+            for (int cx = Math.max(0, cellX - 1); cx <= Math.min(cellsX - 1, cellX + 1); cx++) {
+                nearby[cy * cellsX + cx] += change;
+            }
+        }
+    }
+}
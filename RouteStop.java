@@ -0,0 +1,51 @@
+/**
+ * A stop on a taxi's route: where one of its passengers is picked up or
+ * dropped off.
+ */
+public class RouteStop {
+    private final Passenger passenger;
+    private final boolean pickup;
+
+    /**
+     * Create a stop.
+     *
+     * @param passenger The passenger picked up or dropped off (must not be null).
+     * @param pickup    true for the passenger's pickup, false for their drop-off.
+     * @throws NullPointerException if passenger is null.
+     */
+    public RouteStop(Passenger passenger, boolean pickup) {
+        if (passenger == null) {
+            throw new NullPointerException("Passenger must not be null.");
+        }
+        this.passenger = passenger;
+        this.pickup = pickup;
+    }
+
+    /**
+     * @return The passenger picked up or dropped off.
+     */
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    /**
+     * @return true if the passenger is picked up here, false if dropped off.
+     */
+    public boolean isPickup() {
+        return pickup;
+    }
+
+    /**
+     * @return Where the stop is: the passenger's pickup location or destination.
+     */
+    public Location getLocation() {
+        return pickup ? passenger.getPickupLocation() : passenger.getDestination();
+    }
+
+    /**
+     * @return A string describing the stop.
+     */
+    public String toString() {
+        return (pickup ? "Pickup at " : "Drop-off at ") + getLocation();
+    }
+}
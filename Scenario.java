@@ -0,0 +1,531 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The configuration of a single simulation run: the size of the city, the
+ * fleet, the passenger demand, the number of steps and the random seeds.
+ * <p>
+ * Scenarios are read from a properties file. Every key is optional and falls
+ * back to the value the simulation has always used:
+ * <pre>
+ * name                = default
+ * city.width          = 35
+ * city.height         = 35
+ * fleet.taxis         = 3
+ * fleet.seed          = 12345
+ * demand.probability  = 0.06
+ * demand.seed         = 12345
+ * demand.rate         = 0       # mean requests per step, used instead of demand.probability
+ * demand.premium      = 0       # chance a request is premium
+ * demand.accessible   = 0       # chance a request needs an accessible vehicle
+ * demand.trace        =         # optional file of requests to replay
+ * queue.capacity      = 65536   # most requests waiting for dispatch
+ * passengers.waiting  = 0       # most passengers waiting for a free taxi
+ * passengers.patience = 0       # steps before a passenger gives up, 0 for never
+ * pool.seats          = 1       # most passengers a taxi carries at once
+ * pool.detour         = 10      # most steps sharing may add to a ride
+ * pool.wait           = 10      # most steps a passenger joining a taxi waits for it
+ * steps               = 5000
+ * step.delay          = 100     # milliseconds per step in real time, 0 for none
+ * speed               = 1       # multiple of real time, or "unlimited"
+ * catchup.max         = 5       # most steps run back to back after an overrun
+ * gui                 = true    # false runs the scenario headless
+ * stats.file          =         # optional file for per-step statistics
+ * stats.compress      = false   # compress the statistics file
+ * metrics.port        = 0       # serve Prometheus metrics on localhost, 0 for none
+ * kpi.windows         =         # optional window lengths in steps, e.g. 100, 1000
+ * trips.file          =         # optional file keeping every completed trip
+ * log.movement        = true    # print every taxi movement
+ * movement.batch      = false   # move the taxis together, in vector lanes if built in
+ * </pre>
+ */
+public class Scenario {
+    public static final int DEFAULT_STEPS = 5000;
+    public static final int DEFAULT_STEP_DELAY = 100;
+    public static final long DEFAULT_SEED = 12345;
+    public static final int DEFAULT_POOL_LIMIT = 10;
+
+    private final String name;
+    private final int cityWidth;
+    private final int cityHeight;
+    private final int numberOfTaxis;
+    private final long fleetSeed;
+    private final double creationProbability;
+    private final long demandSeed;
+    private final double demandRate;
+    private final double premiumProbability;
+    private final double accessibilityProbability;
+    private final Path demandTrace;
+    private final int queueCapacity;
+    private final int maxWaitingPassengers;
+    private final int passengerPatience;
+    private final int poolSeats;
+    private final int poolDetour;
+    private final int poolWait;
+    private final int steps;
+    private final int stepDelay;
+    private final double speed;
+    private final int maxCatchUpSteps;
+    private final boolean gui;
+    private final boolean logMovement;
+    private final boolean batchMovement;
+    private final Path statsFile;
+    private final boolean statsCompressed;
+    private final int metricsPort;
+    private final int[] kpiWindows;
+    private final Path tripsFile;
+
+    /**
+     * Create a scenario from a set of properties. Missing keys take their
+     * default values.
+     *
+     * @param properties The scenario properties (must not be null).
+     * @throws IllegalArgumentException If a value is malformed or out of range.
+     */
+    public Scenario(Properties properties) {
+        if (properties == null) {
+            throw new NullPointerException("Properties must not be null.");
+        }
+        name = properties.getProperty("name", "default").trim();
+        cityWidth = intValue(properties, "city.width", City.DEFAULT_WIDTH);
+        cityHeight = intValue(properties, "city.height", City.DEFAULT_HEIGHT);
+        numberOfTaxis = intValue(properties, "fleet.taxis", TaxiCompany.NUMBER_OF_TAXIS);
+        fleetSeed = longValue(properties, "fleet.seed", DEFAULT_SEED);
+        creationProbability = doubleValue(properties, "demand.probability",
+                PassengerSource.CREATION_PROBABILITY);
+        demandSeed = longValue(properties, "demand.seed", DEFAULT_SEED);
+        demandRate = doubleValue(properties, "demand.rate", 0);
+        premiumProbability = doubleValue(properties, "demand.premium", 0);
+        accessibilityProbability = doubleValue(properties, "demand.accessible", 0);
+        String trace = properties.getProperty("demand.trace", "").trim();
+        demandTrace = trace.isEmpty() ? null : Path.of(trace);
+        queueCapacity = intValue(properties, "queue.capacity", RequestQueue.DEFAULT_CAPACITY);
+        maxWaitingPassengers = intValue(properties, "passengers.waiting", 0);
+        passengerPatience = intValue(properties, "passengers.patience", 0);
+        poolSeats = intValue(properties, "pool.seats", 1);
+        poolDetour = intValue(properties, "pool.detour", DEFAULT_POOL_LIMIT);
+        poolWait = intValue(properties, "pool.wait", DEFAULT_POOL_LIMIT);
+        steps = intValue(properties, "steps", DEFAULT_STEPS);
+        stepDelay = intValue(properties, "step.delay", DEFAULT_STEP_DELAY);
+        speed = speedValue(properties, "speed", stepDelay == 0 ? Pacer.UNLIMITED : 1);
+        maxCatchUpSteps = intValue(properties, "catchup.max", Pacer.DEFAULT_MAX_CATCH_UP_STEPS);
+        gui = booleanValue(properties, "gui", true);
+        logMovement = booleanValue(properties, "log.movement", true);
+        batchMovement = booleanValue(properties, "movement.batch", false);
+        String stats = properties.getProperty("stats.file", "").trim();
+        statsFile = stats.isEmpty() ? null : Path.of(stats);
+        statsCompressed = booleanValue(properties, "stats.compress", false);
+        metricsPort = intValue(properties, "metrics.port", 0);
+        kpiWindows = intListValue(properties, "kpi.windows");
+        String trips = properties.getProperty("trips.file", "").trim();
+        tripsFile = trips.isEmpty() ? null : Path.of(trips);
+
+        if (cityWidth < 1 || cityHeight < 1) {
+            throw new IllegalArgumentException(
+                    "City size must be positive: " + cityWidth + " by " + cityHeight);
+        }
+        // A passenger's destination must differ from their pickup location.
+        if ((long) cityWidth * cityHeight < 2) {
+            throw new IllegalArgumentException(
+                    "City must have at least two locations: " + cityWidth + " by " + cityHeight);
+        }
+        if (numberOfTaxis < 0) {
+            throw new IllegalArgumentException("Number of taxis must not be negative: " + numberOfTaxis);
+        }
+        if (creationProbability < 0 || creationProbability > 1) {
+            throw new IllegalArgumentException(
+                    "Demand probability must be between 0 and 1: " + creationProbability);
+        }
+        if (!(demandRate >= 0) || Double.isInfinite(demandRate)) {
+            throw new IllegalArgumentException("Demand rate must be a non-negative number: " + demandRate);
+        }
+        if (premiumProbability < 0 || accessibilityProbability < 0
+                || premiumProbability + accessibilityProbability > 1) {
+            throw new IllegalArgumentException("Invalid priority probabilities: "
+                    + premiumProbability + ", " + accessibilityProbability);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        if (maxWaitingPassengers < 0) {
+            throw new IllegalArgumentException("Waiting passengers must not be negative: " + maxWaitingPassengers);
+        }
+        // Waiting passengers are kept with their coordinates packed in 16 bits.
+        if (maxWaitingPassengers > 0 && (cityWidth > PassengerStore.MAX_COORDINATE + 1
+                || cityHeight > PassengerStore.MAX_COORDINATE + 1)) {
+            throw new IllegalArgumentException("City must be at most " + (PassengerStore.MAX_COORDINATE + 1)
+                    + " wide and high when passengers wait: " + cityWidth + " by " + cityHeight);
+        }
+        if (passengerPatience < 0) {
+            throw new IllegalArgumentException("Patience must not be negative: " + passengerPatience);
+        }
+        if (poolSeats < 1) {
+            throw new IllegalArgumentException("Seats must be positive: " + poolSeats);
+        }
+        if (poolDetour < 0 || poolWait < 0) {
+            throw new IllegalArgumentException("Pooling limits must not be negative: " + poolDetour + ", " + poolWait);
+        }
+        if (steps < 0) {
+            throw new IllegalArgumentException("Step count must not be negative: " + steps);
+        }
+        if (stepDelay < 0) {
+            throw new IllegalArgumentException("Step delay must not be negative: " + stepDelay);
+        }
+        if (metricsPort < 0 || metricsPort > 65535) {
+            throw new IllegalArgumentException("Invalid metrics port: " + metricsPort);
+        }
+        for (int window : kpiWindows) {
+            if (window < 1) {
+                throw new IllegalArgumentException("KPI window must be positive: " + window);
+            }
+        }
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        if (maxCatchUpSteps < 0) {
+            throw new IllegalArgumentException("Catch-up steps must not be negative: " + maxCatchUpSteps);
+        }
+    }
+
+    /**
+     * @return The scenario the simulation runs when none is given.
+     */
+    public static Scenario defaults() {
+        return new Scenario(new Properties());
+    }
+
+    /**
+     * Read a scenario from a properties file. A relative trace file is
+     * found relative to the scenario file.
+     *
+     * @param file The scenario file.
+     * @return The scenario described by the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Scenario load(Path file) throws IOException {
+        return load(file, new Properties());
+    }
+
+    /**
+     * Read a scenario from a properties file, replacing some of its values.
+     * A relative trace file is found relative to the scenario file.
+     *
+     * @param file      The scenario file.
+     * @param overrides Values that take the place of the file's (must not be null).
+     * @return The scenario described by the file and the overrides.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Scenario load(Path file, Properties overrides) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        properties.putAll(overrides);
+        if (!properties.containsKey("name")) {
+            String fileName = file.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            properties.setProperty("name", dot > 0 ? fileName.substring(0, dot) : fileName);
+        }
+        String trace = properties.getProperty("demand.trace", "").trim();
+        Path directory = file.toAbsolutePath().getParent();
+        if (!trace.isEmpty() && !Path.of(trace).isAbsolute() && directory != null) {
+            properties.setProperty("demand.trace", directory.resolve(trace).toString());
+        }
+        return new Scenario(properties);
+    }
+
+    /**
+     * @return The scenario's name, used in reports.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The width of the city.
+     */
+    public int getCityWidth() {
+        return cityWidth;
+    }
+
+    /**
+     * @return The height of the city.
+     */
+    public int getCityHeight() {
+        return cityHeight;
+    }
+
+    /**
+     * @return The number of taxis in the fleet.
+     */
+    public int getNumberOfTaxis() {
+        return numberOfTaxis;
+    }
+
+    /**
+     * @return The seed used to place the fleet.
+     */
+    public long getFleetSeed() {
+        return fleetSeed;
+    }
+
+    /**
+     * @return The probability of a new passenger appearing in each step.
+     */
+    public double getCreationProbability() {
+        return creationProbability;
+    }
+
+    /**
+     * @return The mean number of new passengers in each step, or 0 if
+     * passengers appear with the creation probability instead.
+     */
+    public double getDemandRate() {
+        return demandRate;
+    }
+
+    /**
+     * @return The seed used to generate passengers.
+     */
+    public long getDemandSeed() {
+        return demandSeed;
+    }
+
+    /**
+     * @return The probability that a request is premium.
+     */
+    public double getPremiumProbability() {
+        return premiumProbability;
+    }
+
+    /**
+     * @return The probability that a request needs an accessible vehicle.
+     */
+    public double getAccessibilityProbability() {
+        return accessibilityProbability;
+    }
+
+    /**
+     * @return The file of requests to replay, or null if there is none.
+     */
+    public Path getDemandTrace() {
+        return demandTrace;
+    }
+
+    /**
+     * @return The most pickup requests that may wait for dispatch.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return The most passengers that may wait for a free taxi.
+     */
+    public int getMaxWaitingPassengers() {
+        return maxWaitingPassengers;
+    }
+
+    /**
+     * @return The steps a passenger waits before giving up, or 0 for never.
+     */
+    public int getPassengerPatience() {
+        return passengerPatience;
+    }
+
+    /**
+     * @return The most passengers a taxi carries at once; 1 if taxis do not share.
+     */
+    public int getPoolSeats() {
+        return poolSeats;
+    }
+
+    /**
+     * @return The most steps sharing a taxi may add to any passenger's ride.
+     */
+    public int getPoolDetour() {
+        return poolDetour;
+    }
+
+    /**
+     * @return The most steps a passenger joining a shared taxi waits for it.
+     */
+    public int getPoolWait() {
+        return poolWait;
+    }
+
+    /**
+     * @return The number of steps to run.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return The duration of a step in real time, in milliseconds.
+     */
+    public int getStepDelay() {
+        return stepDelay;
+    }
+
+    /**
+     * @return The speed as a multiple of real time, or {@link Pacer#UNLIMITED}.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return The most steps that may run back to back after an overrun.
+     */
+    public int getMaxCatchUpSteps() {
+        return maxCatchUpSteps;
+    }
+
+    /**
+     * @return Whether the city should be displayed.
+     */
+    public boolean isGuiEnabled() {
+        return gui;
+    }
+
+    /**
+     * @return Whether every taxi movement should be printed.
+     */
+    public boolean isMovementLogged() {
+        return logMovement;
+    }
+
+    /**
+     * @return Whether the taxis are moved together by a {@link BatchMovement}
+     * rather than each acting on its own.
+     */
+    public boolean isMovementBatched() {
+        return batchMovement;
+    }
+
+    /**
+     * @return The file to write per-step statistics to, or null if none.
+     */
+    public Path getStatsFile() {
+        return statsFile;
+    }
+
+    /**
+     * @return Whether the statistics file should be compressed.
+     */
+    public boolean isStatsCompressed() {
+        return statsCompressed;
+    }
+
+    /**
+     * @return The local port for the metrics endpoint, or 0 if it is off.
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * @return The lengths in steps of the sliding windows over which
+     * key figures are kept, which may be empty.
+     */
+    public int[] getKpiWindows() {
+        return kpiWindows.clone();
+    }
+
+    /**
+     * @return The file in which completed trips are kept, or null for none.
+     */
+    public Path getTripsFile() {
+        return tripsFile;
+    }
+
+    /**
+     * @return A string representation of the scenario.
+     */
+    public String toString() {
+        return "Scenario " + name + ": city " + cityWidth + " by " + cityHeight
+                + ", " + numberOfTaxis + " taxis, demand "
+                + (demandRate > 0 ? demandRate + " per step" : creationProbability)
+                + ", " + steps + " steps";
+    }
+
+    private static int intValue(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim().replace("_", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + ": " + value);
+        }
+    }
+
+    private static int[] intListValue(Properties properties, String key) {
+        String value = properties.getProperty(key, "").trim();
+        if (value.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = value.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            try {
+                values[i] = Integer.parseInt(parts[i].trim().replace("_", ""));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid integer list for " + key + ": " + value);
+            }
+        }
+        return values;
+    }
+
+    private static long longValue(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim().replace("_", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + ": " + value);
+        }
+    }
+
+    private static double doubleValue(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+
+    private static double speedValue(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value != null && value.trim().equalsIgnoreCase("unlimited")) {
+            return Pacer.UNLIMITED;
+        }
+        return doubleValue(properties, key, defaultValue);
+    }
+
+    private static boolean booleanValue(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        value = value.trim();
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid boolean for " + key + ": " + value);
+    }
+}
@@ -0,0 +1,302 @@
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Run whole scenarios headless and at full speed, and report how fast they
+ * ran and how much memory they used: steps per second after warm-up, the
+ * exact 99th percentile of the step times after warm-up, time spent in
+ * garbage collection pauses, the allocation rate of the simulation thread,
+ * the peak heap in use and the time from starting the run to its first
+ * step.
+ * <p>
+ * Each run also reports a checksum of the company's and the passenger
+ * source's final counters and the final position of every vehicle. The
+ * scenarios are seeded, so the checksum only changes when the simulation's
+ * behaviour does, and a change that should only make it faster can be
+ * checked against an earlier run.
+ * <p>
+ * Results can be saved as a properties file of baselines and later runs
+ * compared against it:
+ * <pre>
+ * java ScenarioBenchmark [--runs n] [--fleets n,n,...] [--save file] [--compare file] [scenario...]
+ * </pre>
+ * With {@code --fleets}, each scenario is run once for each fleet size
+ * given, and the results are named after the scenario and the size.
+ * Without scenarios, every scenario in the scenarios directory is run. With
+ * more than one run per scenario, the last is reported and the earlier ones
+ * serve as warm-up, so a baseline records how many runs it was taken with
+ * and throughput is only compared against baselines taken with as many.
+ * The exit status is 1 if any checksum differs from the baseline or
+ * between runs of the same scenario.
+ */
+public class ScenarioBenchmark {
+    private static final Path SCENARIO_DIRECTORY = Path.of("scenarios");
+    // Percentage by which throughput may fall before it is flagged.
+    private static final double TOLERANCE_PERCENT = 10;
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The command-line arguments described above.
+     * @throws IOException If a scenario or baseline file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        int runs = 1;
+        Path saveFile = null;
+        Path compareFile = null;
+        String[] fleets = {};
+        List<Path> scenarioFiles = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--runs" -> runs = Integer.parseInt(args[++i]);
+                case "--save" -> saveFile = Path.of(args[++i]);
+                case "--compare" -> compareFile = Path.of(args[++i]);
+                case "--fleets" -> fleets = args[++i].split(",");
+                default -> scenarioFiles.add(Path.of(args[i]));
+            }
+        }
+        if (runs < 1) {
+            throw new IllegalArgumentException("Runs must be positive: " + runs);
+        }
+        if (scenarioFiles.isEmpty()) {
+            try (Stream<Path> files = Files.list(SCENARIO_DIRECTORY)) {
+                files.filter(file -> file.toString().endsWith(".properties"))
+                        .sorted()
+                        .forEach(scenarioFiles::add);
+            }
+        }
+
+        Properties overrides = new Properties();
+        overrides.setProperty("gui", "false");
+        overrides.setProperty("log.movement", "false");
+        overrides.setProperty("step.delay", "0");
+        overrides.setProperty("speed", "unlimited");
+        overrides.setProperty("stats.file", "");
+        overrides.setProperty("trips.file", "");
+        overrides.setProperty("metrics.port", "0");
+
+        boolean behaviourChanged = false;
+        Properties results = new Properties();
+        List<Scenario> scenarios = new ArrayList<>();
+        for (Path file : scenarioFiles) {
+            if (fleets.length == 0) {
+                scenarios.add(Scenario.load(file, overrides));
+            }
+            for (String fleet : fleets) {
+                Properties sized = new Properties();
+                sized.putAll(overrides);
+                sized.setProperty("fleet.taxis", fleet.trim());
+                Scenario base = Scenario.load(file, overrides);
+                sized.setProperty("name", base.getName() + "-" + fleet.trim());
+                scenarios.add(Scenario.load(file, sized));
+            }
+        }
+
+        for (Scenario scenario : scenarios) {
+            Result result = null;
+            for (int run = 1; run <= runs; run++) {
+                Result latest = run(scenario, runs);
+                if (result != null && latest.checksum != result.checksum) {
+                    System.out.println("  Checksum differs between runs: the scenario is not deterministic");
+                    behaviourChanged = true;
+                }
+                result = latest;
+            }
+            result.print();
+            result.store(results);
+            if (compareFile != null) {
+                behaviourChanged |= !compare(result, baselines(compareFile));
+            }
+        }
+
+        if (saveFile != null) {
+            try (Writer writer = Files.newBufferedWriter(saveFile)) {
+                results.store(writer, "Scenario benchmark baselines");
+            }
+        }
+        if (behaviourChanged) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run a scenario once and measure it.
+     *
+     * @param scenario The scenario.
+     * @param runs     The number of runs of the scenario, warm-up included.
+     * @return The measurements.
+     */
+    private static Result run(Scenario scenario, int runs) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long gcPausesBefore = gcPauseMillis();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        Simulation simulation = new Simulation(scenario);
+        simulation.setLaunchNanos(start);
+        simulation.keepStepTimes();
+        simulation.run();
+
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(scenario.getName(), runs,
+                simulation.getSteadyStateStepsPerSecond(),
+                percentile(simulation.getSteadyStateStepNanos(), 99),
+                gcPauseMillis() - gcPausesBefore,
+                allocated / (1024.0 * 1024.0) / (elapsedNanos / 1e9),
+                simulation.getPeakHeapUsed() / (1024.0 * 1024.0),
+                simulation.getTimeToFirstStepNanos(),
+                checksum(simulation));
+    }
+
+    /**
+     * Find a percentile of a set of durations by the nearest-rank method.
+     *
+     * @param nanos      The durations, in nanoseconds. Sorted in place.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The shortest duration that at least that percentage of the
+     * durations do not exceed, or 0 if there are none.
+     */
+    private static long percentile(long[] nanos, double percentile) {
+        if (nanos.length == 0) {
+            return 0;
+        }
+        Arrays.sort(nanos);
+        int rank = Math.max(1, (int) Math.ceil(nanos.length * percentile / 100));
+        return nanos[rank - 1];
+    }
+
+    /**
+     * @return The time all collectors have spent in pauses so far, in
+     * milliseconds. Collectors that work alongside the application report
+     * their concurrent cycles separately, and those are left out.
+     */
+    private static long gcPauseMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = collector.getName();
+            if (!name.contains("Concurrent") && !name.contains("Cycles")) {
+                total += Math.max(0, collector.getCollectionTime());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Work out a checksum of the final state of a simulation.
+     *
+     * @param simulation A simulation that has run.
+     * @return The checksum.
+     */
+    private static long checksum(Simulation simulation) {
+        TaxiCompany company = simulation.getCompany();
+        PassengerSource source = simulation.getSource();
+        List<Vehicle> vehicles = company.getVehicles();
+        ByteBuffer state = ByteBuffer.allocate(4 * (9 + 2 * vehicles.size()));
+        state.putInt(simulation.getStep())
+                .putInt(company.getTotalPickups())
+                .putInt(company.getTotalDropoffs())
+                .putInt(company.getTotalAbandoned())
+                .putInt(company.getTotalIdleSteps())
+                .putInt(company.getActiveTaxiCount())
+                .putInt(company.getWaitingPassengerCount())
+                .putInt(source.getTotalPassengersCreated())
+                .putInt(source.getMissedPickups());
+        for (Vehicle vehicle : vehicles) {
+            state.putInt(vehicle.getLocation().getX()).putInt(vehicle.getLocation().getY());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(state.flip());
+        return crc.getValue();
+    }
+
+    /**
+     * Read a baselines file.
+     *
+     * @param file The file.
+     * @return The baselines.
+     * @throws IOException If the file cannot be read.
+     */
+    private static Properties baselines(Path file) throws IOException {
+        Properties baselines = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            baselines.load(reader);
+        }
+        return baselines;
+    }
+
+    /**
+     * Compare a result against its baseline and print the differences.
+     * Throughput is not compared if the baseline was taken with a different
+     * number of runs, as the runs before the last warm the JVM up.
+     *
+     * @param result    The result.
+     * @param baselines The baselines.
+     * @return false if the checksum differs from the baseline's.
+     */
+    private static boolean compare(Result result, Properties baselines) {
+        String checksum = baselines.getProperty(result.name + ".checksum");
+        if (checksum == null) {
+            System.out.println("  No baseline for " + result.name);
+            return true;
+        }
+        String baseRuns = baselines.getProperty(result.name + ".runs");
+        if (baseRuns != null && Integer.parseInt(baseRuns) != result.runs) {
+            System.out.println("  Baseline was taken with --runs " + baseRuns + ", not " + result.runs
+                    + ": throughput not compared");
+        } else {
+            double baseRate = Double.parseDouble(baselines.getProperty(result.name + ".stepsPerSecond"));
+            double change = baseRate == 0 ? 0 : 100 * (result.stepsPerSecond - baseRate) / baseRate;
+            System.out.printf("  Against baseline:   %+.1f%% steps/sec (was %.1f)%s%n", change, baseRate,
+                    change < -TOLERANCE_PERCENT ? "  SLOWER" : "");
+        }
+        if (!checksum.equals(Long.toHexString(result.checksum))) {
+            System.out.println("  Checksum differs from baseline " + checksum + ": behaviour has changed");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The measurements from one run of a scenario.
+     */
+    private record Result(String name, int runs, double stepsPerSecond, long p99StepNanos,
+                          long gcPauseMillis, double allocationMBPerSecond, double peakHeapMB,
+                          long timeToFirstStepNanos, long checksum) {
+        void print() {
+            System.out.println("Benchmark " + name);
+            System.out.printf("  Steps/sec:          %.1f%n", stepsPerSecond);
+            System.out.printf("  p99 step time:      %.3f ms%n", p99StepNanos / 1e6);
+            System.out.printf("  GC pauses:          %d ms%n", gcPauseMillis);
+            System.out.printf("  Allocation rate:    %.1f MB/s%n", allocationMBPerSecond);
+            System.out.printf("  Peak heap:          %.1f MB%n", peakHeapMB);
+            System.out.printf("  Time to first step: %.1f ms%n", timeToFirstStepNanos / 1e6);
+            System.out.printf("  Checksum:           %s%n", Long.toHexString(checksum));
+        }
+
+        void store(Properties results) {
+            results.setProperty(name + ".runs", String.valueOf(runs));
+            results.setProperty(name + ".stepsPerSecond", String.valueOf(stepsPerSecond));
+            results.setProperty(name + ".p99StepNanos", String.valueOf(p99StepNanos));
+            results.setProperty(name + ".gcPauseMillis", String.valueOf(gcPauseMillis));
+            results.setProperty(name + ".allocationMBPerSecond", String.valueOf(allocationMBPerSecond));
+            results.setProperty(name + ".peakHeapMB", String.valueOf(peakHeapMB));
+            results.setProperty(name + ".timeToFirstStepNanos", String.valueOf(timeToFirstStepNanos));
+            results.setProperty(name + ".checksum", Long.toHexString(checksum));
+        }
+    }
+}
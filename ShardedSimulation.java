@@ -0,0 +1,745 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run a scenario split across several local JVM processes, each of which
+ * moves the vehicles in one region of the city.
+ * <p>
+ * The city is cut into vertical strips, one per process, or shard. Every
+ * shard moves the vehicles in its strip each step and hands any vehicle
+ * that crosses into another strip to that strip's shard. Shard 0 also
+ * creates the passengers and dispatches them: the other shards tell it
+ * when a vehicle becomes free, and it tells the owner of the vehicle it
+ * picks where to go. The shards share nothing but a memory-mapped file,
+ * which holds a {@link SharedRing} for every ordered pair of shards, a
+ * {@link SharedBarrier} that keeps them in step, and their final counters
+ * and vehicle positions. No sockets or brokers are involved.
+ * <p>
+ * Each step has two phases, separated by the barrier: first every shard
+ * moves its vehicles, then shard 0 dispatches, seeing exactly the vehicles
+ * that are free after everyone has moved. That is the order the
+ * single-process {@link Simulation} runs its actors in, and passengers are
+ * drawn from the same random stream and given to the free vehicle with the
+ * lowest id, as the company does. A sharded run therefore ends with the
+ * same counters and the same vehicle positions as a single-process run of
+ * the same scenario, which {@code --verify} checks.
+ * <p>
+ * Only the basic model is sharded: scenarios with waiting passengers,
+ * patience, priorities, a demand trace or shared taxis are rejected.
+ * Statistics files, metrics, KPI windows, trip histories and the GUI are
+ * not produced.
+ * <pre>
+ * java ShardedSimulation scenario-file shards [--verify]
+ * </pre>
+ */
+public class ShardedSimulation {
+    // Records in each ring; enough for a busy step without waiting.
+    public static final int DEFAULT_RING_CAPACITY = 4096;
+    private static final int MAGIC = 0x53484152;
+    private static final int VERSION = 1;
+    private static final int NONE = -1;
+
+    // Layout of the shared file: a header, the barrier, the shards'
+    // counters, the rings and then every vehicle's final position.
+    private static final int HEADER_BYTES = 64;
+    private static final int RESULT_BYTES = 64;
+    private static final int POSITION_BYTES = 8;
+
+    // Message types, and the fields of a message.
+    private static final int MIGRATE = 1;
+    private static final int FREE = 2;
+    private static final int ASSIGN = 3;
+    private static final int TYPE = 0;
+    private static final int STEP = 1;
+    private static final int VEHICLE = 2;
+    private static final int X = 3;
+    private static final int Y = 4;
+    private static final int STATE = 5;
+    private static final int TARGET_X = 6;
+    private static final int TARGET_Y = 7;
+    private static final int DESTINATION_X = 8;
+    private static final int DESTINATION_Y = 9;
+
+    // Vehicle states.
+    private static final int IDLE = 0;
+    private static final int TO_PICKUP = 1;
+    private static final int TO_DESTINATION = 2;
+
+    private final Scenario scenario;
+    private final ByteBuffer shared;
+    private final int shards;
+    private final int shard;
+    private final int fleetSize;
+    private final int cityWidth;
+    private final SharedRing[][] rings;
+    private final SharedBarrier barrier;
+
+    // The vehicles this shard owns, packed at the front of the arrays.
+    private int count;
+    private int[] ids;
+    private int[] xs;
+    private int[] ys;
+    private int[] states;
+    private int[] targetXs;
+    private int[] targetYs;
+    private int[] destinationXs;
+    private int[] destinationYs;
+    // Per vehicle id: its index in the arrays above, or NONE if not owned here.
+    private final int[] indexOf;
+
+    // Messages received but not yet due, packed RECORD_INTS at a time.
+    private int[] pending;
+    private int pendingCount;
+    private final int[] record;
+
+    private long pickups;
+    private long dropoffs;
+    private long idleSteps;
+
+    // Shard 0 only: the demand, the trip being dispatched, the free vehicles
+    // and which shard each is in.
+    private SplittableRandom demand;
+    private int[] trip;
+    private BitSet freeVehicles;
+    private int[] ownerOf;
+    private int created;
+    private int missed;
+
+    /**
+     * Create one shard of a sharded run.
+     *
+     * @param scenario The scenario.
+     * @param shared   The shared file, mapped in native byte order.
+     * @param shards   The number of shards.
+     * @param shard    This shard's number, from 0.
+     * @param capacity The capacity of each ring.
+     */
+    private ShardedSimulation(Scenario scenario, ByteBuffer shared, int shards, int shard, int capacity) {
+        this.scenario = scenario;
+        this.shared = shared;
+        this.shards = shards;
+        this.shard = shard;
+        this.fleetSize = scenario.getNumberOfTaxis();
+        this.cityWidth = scenario.getCityWidth();
+
+        rings = new SharedRing[shards][shards];
+        long ringBytes = ringBytes(capacity);
+        for (int from = 0; from < shards; from++) {
+            for (int to = 0; to < shards; to++) {
+                long base = ringsBase(shards) + (from * (long) shards + to) * ringBytes;
+                rings[from][to] = new SharedRing(shared, (int) base, capacity);
+            }
+        }
+        barrier = new SharedBarrier(shared, HEADER_BYTES, shards, shard, SharedBarrier.DEFAULT_TIMEOUT_NANOS);
+
+        int initialCapacity = Math.max(16, fleetSize / shards);
+        ids = new int[initialCapacity];
+        xs = new int[initialCapacity];
+        ys = new int[initialCapacity];
+        states = new int[initialCapacity];
+        targetXs = new int[initialCapacity];
+        targetYs = new int[initialCapacity];
+        destinationXs = new int[initialCapacity];
+        destinationYs = new int[initialCapacity];
+        indexOf = new int[fleetSize];
+        Arrays.fill(indexOf, NONE);
+        pending = new int[64 * SharedRing.RECORD_INTS];
+        record = new int[SharedRing.RECORD_INTS];
+
+        if (shard == 0) {
+            demand = new RandomStreams(scenario.getDemandSeed()).stream("demand");
+            trip = new int[PassengerSource.TRIP_LENGTH];
+            freeVehicles = new BitSet(fleetSize);
+            ownerOf = new int[fleetSize];
+        }
+    }
+
+    /**
+     * Run a scenario over several processes, or, with {@code --worker}, run
+     * one of those processes. Workers are started by the first process and
+     * are not meant to be started by hand.
+     *
+     * @param args The command-line arguments described above.
+     * @throws IOException          If the scenario or the shared file cannot be read or written.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 4 && args[0].equals("--worker")) {
+            runWorker(Integer.parseInt(args[1]), Path.of(args[2]), Path.of(args[3]));
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: java ShardedSimulation scenario-file shards [--verify]");
+            System.exit(2);
+        }
+        Path scenarioFile = Path.of(args[0]).toAbsolutePath();
+        int shards = Integer.parseInt(args[1]);
+        boolean verify = args.length > 2 && args[2].equals("--verify");
+        if (!runCoordinator(scenarioFile, shards, verify)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run shard 0: create the shared file, start the other shards, run the
+     * scenario and report the results.
+     *
+     * @param scenarioFile The scenario file.
+     * @param shards       The number of shards.
+     * @param verify       Whether to check the results against a single-process run.
+     * @return false if the results did not match a single-process run.
+     * @throws IOException          If the scenario or the shared file cannot be read or written.
+     * @throws InterruptedException If interrupted while waiting for the workers.
+     */
+    private static boolean runCoordinator(Path scenarioFile, int shards, boolean verify)
+            throws IOException, InterruptedException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shards);
+        }
+        Scenario scenario = Scenario.load(scenarioFile, overrides());
+        checkSupported(scenario);
+        int capacity = DEFAULT_RING_CAPACITY;
+        long size = positionsBase(shards, capacity) + (long) scenario.getNumberOfTaxis() * POSITION_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many shards or taxis for one shared file: " + size + " bytes");
+        }
+
+        Path sharedFile = Files.createTempFile("taxi-shards", ".bin");
+        List<Process> workers = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(sharedFile,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer shared = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            shared.order(ByteOrder.nativeOrder());
+            shared.putInt(0, MAGIC)
+                    .putInt(4, VERSION)
+                    .putInt(8, shards)
+                    .putInt(12, capacity)
+                    .putInt(16, scenario.getNumberOfTaxis());
+
+            long start = System.nanoTime();
+            for (int shard = 1; shard < shards; shard++) {
+                workers.add(startWorker(shard, sharedFile, scenarioFile));
+            }
+            ShardedSimulation coordinator = new ShardedSimulation(scenario, shared, shards, 0, capacity);
+            try {
+                coordinator.run();
+            } finally {
+                for (Process worker : workers) {
+                    if (!worker.waitFor(10, TimeUnit.SECONDS)) {
+                        worker.destroyForcibly();
+                    }
+                }
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            for (Process worker : workers) {
+                if (worker.exitValue() != 0) {
+                    throw new IllegalStateException("A shard failed with exit status " + worker.exitValue());
+                }
+            }
+            return coordinator.report(elapsedNanos, verify);
+        } finally {
+            Files.deleteIfExists(sharedFile);
+        }
+    }
+
+    /**
+     * Run one of shards 1 and up in this process.
+     *
+     * @param shard        The shard's number.
+     * @param sharedFile   The shared file, created by shard 0.
+     * @param scenarioFile The scenario file.
+     * @throws IOException If the scenario or the shared file cannot be read.
+     */
+    private static void runWorker(int shard, Path sharedFile, Path scenarioFile) throws IOException {
+        Scenario scenario = Scenario.load(scenarioFile, overrides());
+        try (FileChannel channel = FileChannel.open(sharedFile,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer shared = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            shared.order(ByteOrder.nativeOrder());
+            if (shared.getInt(0) != MAGIC || shared.getInt(4) != VERSION) {
+                throw new IOException("Not a shard file: " + sharedFile);
+            }
+            int shards = shared.getInt(8);
+            int capacity = shared.getInt(12);
+            if (shared.getInt(16) != scenario.getNumberOfTaxis()) {
+                throw new IOException("Shard file is for a different fleet: " + sharedFile);
+            }
+            new ShardedSimulation(scenario, shared, shards, shard, capacity).run();
+        }
+    }
+
+    /**
+     * Start a worker process running one shard, with the same JVM, options
+     * and class path as this one.
+     *
+     * @param shard        The shard's number.
+     * @param sharedFile   The shared file.
+     * @param scenarioFile The scenario file.
+     * @return The process.
+     * @throws IOException If the process cannot be started.
+     */
+    private static Process startWorker(int shard, Path sharedFile, Path scenarioFile) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            // A debugger agent would try to listen on the same port twice.
+            if (!option.startsWith("-agentlib:jdwp")) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardedSimulation.class.getName());
+        command.add("--worker");
+        command.add(String.valueOf(shard));
+        command.add(sharedFile.toString());
+        command.add(scenarioFile.toString());
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * @return The settings every shard overrides: sharded runs are headless
+     * and unpaced.
+     */
+    private static Properties overrides() {
+        Properties overrides = new Properties();
+        overrides.setProperty("gui", "false");
+        overrides.setProperty("log.movement", "false");
+        overrides.setProperty("step.delay", "0");
+        overrides.setProperty("speed", "unlimited");
+        return overrides;
+    }
+
+    /**
+     * Reject scenarios that use parts of the model the shards do not run.
+     *
+     * @param scenario The scenario.
+     * @throws IllegalArgumentException if the scenario cannot be sharded.
+     */
+    private static void checkSupported(Scenario scenario) {
+        if (scenario.getMaxWaitingPassengers() != 0 || scenario.getPassengerPatience() != 0) {
+            throw new IllegalArgumentException("Sharded runs do not support waiting passengers or patience");
+        }
+        if (scenario.getPremiumProbability() != 0 || scenario.getAccessibilityProbability() != 0) {
+            throw new IllegalArgumentException("Sharded runs do not support request priorities");
+        }
+        if (scenario.getDemandTrace() != null) {
+            throw new IllegalArgumentException("Sharded runs do not support demand traces");
+        }
+        if (scenario.getPoolSeats() > 1) {
+            throw new IllegalArgumentException("Sharded runs do not support shared taxis");
+        }
+    }
+
+    /**
+     * Run this shard's part of the scenario, in step with the other shards.
+     */
+    private void run() {
+        placeVehicles();
+        barrier.await(1, this::drainInbound);
+        int steps = scenario.getSteps();
+        for (int step = 1; step <= steps; step++) {
+            moveVehicles(step);
+            barrier.await(2L * step, this::drainInbound);
+            applyPending(step, MIGRATE);
+            if (shard == 0) {
+                dispatch(step);
+            }
+            barrier.await(2L * step + 1, this::drainInbound);
+            applyPending(step, ASSIGN);
+        }
+        writeResults();
+        barrier.await(2L * steps + 2, this::drainInbound);
+    }
+
+    /**
+     * Place the fleet as the company does, each vehicle by its own random
+     * stream, and keep the vehicles that start in this shard's region.
+     */
+    private void placeVehicles() {
+        RandomStreams streams = new RandomStreams(scenario.getFleetSeed());
+        for (int id = 0; id < fleetSize; id++) {
+            SplittableRandom rand = streams.stream("vehicle", id);
+            int x = rand.nextInt(cityWidth);
+            int y = rand.nextInt(scenario.getCityHeight());
+            int region = regionOf(x);
+            if (region == shard) {
+                add(id, x, y, IDLE, 0, 0, 0, 0);
+            }
+            if (shard == 0) {
+                freeVehicles.set(id);
+                ownerOf[id] = region;
+            }
+        }
+    }
+
+    /**
+     * Move every vehicle this shard owns by one step, as {@link Taxi#act}
+     * does, and hand vehicles that leave the region to their new shard.
+     *
+     * @param step The current step.
+     */
+    private void moveVehicles(int step) {
+        int i = 0;
+        while (i < count) {
+            if (states[i] == IDLE) {
+                idleSteps++;
+                i++;
+                continue;
+            }
+            xs[i] += Integer.compare(targetXs[i], xs[i]);
+            ys[i] += Integer.compare(targetYs[i], ys[i]);
+            boolean freed = false;
+            if (xs[i] == targetXs[i] && ys[i] == targetYs[i]) {
+                if (states[i] == TO_DESTINATION) {
+                    dropoffs++;
+                    states[i] = IDLE;
+                    freed = true;
+                } else {
+                    pickups++;
+                    states[i] = TO_DESTINATION;
+                    targetXs[i] = destinationXs[i];
+                    targetYs[i] = destinationYs[i];
+                }
+            }
+            int region = regionOf(xs[i]);
+            if (freed) {
+                fill(FREE, step, i);
+                record[STATE] = region;
+                send(0);
+            }
+            if (region != shard) {
+                fill(MIGRATE, step, i);
+                send(region);
+                remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Create the passengers for this step, if there are any, and send the
+     * free vehicle with the lowest id to collect each. Called on shard 0
+     * once every shard has moved its vehicles.
+     *
+     * @param step The current step.
+     */
+    private void dispatch(int step) {
+        if (scenario.getDemandRate() > 0) {
+            for (int i = PassengerSource.requestsThisStep(scenario.getDemandRate(), demand); i > 0; i--) {
+                dispatchOne(step);
+            }
+        } else if (demand.nextDouble() <= scenario.getCreationProbability()) {
+            dispatchOne(step);
+        }
+    }
+
+    /**
+     * Create one passenger and send the free vehicle with the lowest id to
+     * collect them.
+     *
+     * @param step The current step.
+     */
+    private void dispatchOne(int step) {
+        PassengerSource.drawTrip(cityWidth, scenario.getCityHeight(), demand, trip);
+        created++;
+
+        int vehicle = freeVehicles.nextSetBit(0);
+        if (vehicle < 0) {
+            missed++;
+            return;
+        }
+        freeVehicles.clear(vehicle);
+        Arrays.fill(record, 0);
+        record[TYPE] = ASSIGN;
+        record[STEP] = step;
+        record[VEHICLE] = vehicle;
+        record[TARGET_X] = trip[PassengerSource.PICKUP_X];
+        record[TARGET_Y] = trip[PassengerSource.PICKUP_Y];
+        record[DESTINATION_X] = trip[PassengerSource.DESTINATION_X];
+        record[DESTINATION_Y] = trip[PassengerSource.DESTINATION_Y];
+        send(ownerOf[vehicle]);
+    }
+
+    /**
+     * Apply the messages of a step that are due. Vehicles handed over and
+     * vehicles freed are due once every shard has moved; assignments are
+     * due once shard 0 has dispatched. A shard may already have started the
+     * next step and sent messages for it, and those are kept for later.
+     *
+     * @param step  The current step.
+     * @param phase MIGRATE for the first phase of the step, ASSIGN for the second.
+     */
+    private void applyPending(int step, int phase) {
+        drainInbound();
+        int kept = 0;
+        for (int offset = 0; offset < pendingCount * SharedRing.RECORD_INTS; offset += SharedRing.RECORD_INTS) {
+            int type = pending[offset + TYPE];
+            boolean due = pending[offset + STEP] == step && (type == ASSIGN) == (phase == ASSIGN);
+            if (due) {
+                apply(offset);
+            } else {
+                System.arraycopy(pending, offset, pending, kept * SharedRing.RECORD_INTS, SharedRing.RECORD_INTS);
+                kept++;
+            }
+        }
+        pendingCount = kept;
+    }
+
+    /**
+     * Apply one pending message.
+     *
+     * @param offset The message's offset in the pending messages.
+     */
+    private void apply(int offset) {
+        int vehicle = pending[offset + VEHICLE];
+        switch (pending[offset + TYPE]) {
+            case MIGRATE -> add(vehicle, pending[offset + X], pending[offset + Y], pending[offset + STATE],
+                    pending[offset + TARGET_X], pending[offset + TARGET_Y],
+                    pending[offset + DESTINATION_X], pending[offset + DESTINATION_Y]);
+            case FREE -> {
+                freeVehicles.set(vehicle);
+                ownerOf[vehicle] = pending[offset + STATE];
+            }
+            case ASSIGN -> {
+                int i = indexOf[vehicle];
+                if (i == NONE || states[i] != IDLE) {
+                    throw new IllegalStateException("Vehicle " + vehicle + " is not free in shard " + shard);
+                }
+                states[i] = TO_PICKUP;
+                targetXs[i] = pending[offset + TARGET_X];
+                targetYs[i] = pending[offset + TARGET_Y];
+                destinationXs[i] = pending[offset + DESTINATION_X];
+                destinationYs[i] = pending[offset + DESTINATION_Y];
+            }
+            default -> throw new IllegalStateException("Unknown message type " + pending[offset + TYPE]);
+        }
+    }
+
+    /**
+     * Move every message waiting in the rings addressed to this shard into
+     * the pending messages.
+     */
+    private void drainInbound() {
+        for (int from = 0; from < shards; from++) {
+            if (from != shard) {
+                SharedRing ring = rings[from][shard];
+                while (ring.poll(record)) {
+                    addPending(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the message in the record buffer to a shard, waiting for room in
+     * the ring if need be. While waiting, this shard keeps draining its own
+     * rings, so two shards sending to each other cannot block each other.
+     *
+     * @param to The shard to send to.
+     */
+    private void send(int to) {
+        if (to == shard) {
+            addPending(record);
+            return;
+        }
+        SharedRing ring = rings[shard][to];
+        int[] message = record.clone();
+        long deadline = System.nanoTime() + SharedBarrier.DEFAULT_TIMEOUT_NANOS;
+        while (!ring.offer(message)) {
+            drainInbound();
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Shard " + to + " stopped taking messages");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Fill the record buffer with a message about an owned vehicle.
+     */
+    private void fill(int type, int step, int i) {
+        record[TYPE] = type;
+        record[STEP] = step;
+        record[VEHICLE] = ids[i];
+        record[X] = xs[i];
+        record[Y] = ys[i];
+        record[STATE] = states[i];
+        record[TARGET_X] = targetXs[i];
+        record[TARGET_Y] = targetYs[i];
+        record[DESTINATION_X] = destinationXs[i];
+        record[DESTINATION_Y] = destinationYs[i];
+    }
+
+    /**
+     * Keep a received message until it is due.
+     */
+    private void addPending(int[] message) {
+        int offset = pendingCount * SharedRing.RECORD_INTS;
+        if (offset == pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        System.arraycopy(message, 0, pending, offset, SharedRing.RECORD_INTS);
+        pendingCount++;
+    }
+
+    /**
+     * Take ownership of a vehicle.
+     */
+    private void add(int id, int x, int y, int state, int targetX, int targetY, int destinationX, int destinationY) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            states = Arrays.copyOf(states, capacity);
+            targetXs = Arrays.copyOf(targetXs, capacity);
+            targetYs = Arrays.copyOf(targetYs, capacity);
+            destinationXs = Arrays.copyOf(destinationXs, capacity);
+            destinationYs = Arrays.copyOf(destinationYs, capacity);
+        }
+        ids[count] = id;
+        xs[count] = x;
+        ys[count] = y;
+        states[count] = state;
+        targetXs[count] = targetX;
+        targetYs[count] = targetY;
+        destinationXs[count] = destinationX;
+        destinationYs[count] = destinationY;
+        indexOf[id] = count;
+        count++;
+    }
+
+    /**
+     * Give up ownership of a vehicle, moving the last one into its place.
+     */
+    private void remove(int i) {
+        indexOf[ids[i]] = NONE;
+        int last = --count;
+        if (i != last) {
+            ids[i] = ids[last];
+            xs[i] = xs[last];
+            ys[i] = ys[last];
+            states[i] = states[last];
+            targetXs[i] = targetXs[last];
+            targetYs[i] = targetYs[last];
+            destinationXs[i] = destinationXs[last];
+            destinationYs[i] = destinationYs[last];
+            indexOf[ids[i]] = i;
+        }
+    }
+
+    /**
+     * Write this shard's counters and the positions of its vehicles to the
+     * shared file, for shard 0 to collect.
+     */
+    private void writeResults() {
+        int base = resultsBase(shards) + shard * RESULT_BYTES;
+        shared.putLong(base, pickups)
+                .putLong(base + 8, dropoffs)
+                .putLong(base + 16, idleSteps);
+        long positions = positionsBase(shards, capacity());
+        for (int i = 0; i < count; i++) {
+            int offset = (int) (positions + (long) ids[i] * POSITION_BYTES);
+            shared.putInt(offset, xs[i]).putInt(offset + 4, ys[i]);
+        }
+    }
+
+    /**
+     * Print the results of the run collected from every shard and, if asked,
+     * check them against a single-process run.
+     *
+     * @param elapsedNanos How long the run took, including starting the workers.
+     * @param verify       Whether to run the scenario in one process and compare.
+     * @return false if the results did not match a single-process run.
+     */
+    private boolean report(long elapsedNanos, boolean verify) {
+        long totalPickups = 0;
+        long totalDropoffs = 0;
+        long totalIdleSteps = 0;
+        for (int other = 0; other < shards; other++) {
+            int base = resultsBase(shards) + other * RESULT_BYTES;
+            totalPickups += shared.getLong(base);
+            totalDropoffs += shared.getLong(base + 8);
+            totalIdleSteps += shared.getLong(base + 16);
+        }
+        System.out.println(scenario + " over " + shards + " shards");
+        System.out.printf("Steps: %d in %.1f ms%n", scenario.getSteps(), elapsedNanos / 1e6);
+        System.out.println("Pickups: " + totalPickups + "  Dropoffs: " + totalDropoffs
+                + "  Missed: " + missed + "  Created: " + created + "  Idle steps: " + totalIdleSteps);
+        if (!verify) {
+            return true;
+        }
+
+        Simulation simulation = new Simulation(scenario);
+        simulation.run();
+        TaxiCompany company = simulation.getCompany();
+        PassengerSource source = simulation.getSource();
+        boolean matches = company.getTotalPickups() == totalPickups
+                && company.getTotalDropoffs() == totalDropoffs
+                && company.getTotalIdleSteps() == totalIdleSteps
+                && source.getMissedPickups() == missed
+                && source.getTotalPassengersCreated() == created;
+        long positions = positionsBase(shards, capacity());
+        int moved = 0;
+        for (Vehicle vehicle : company.getVehicles()) {
+            int offset = (int) (positions + (long) vehicle.getId() * POSITION_BYTES);
+            Location location = vehicle.getLocation();
+            if (shared.getInt(offset) != location.getX() || shared.getInt(offset + 4) != location.getY()) {
+                moved++;
+            }
+        }
+        matches &= moved == 0;
+        System.out.println(matches ? "Matches the single-process run"
+                : "Differs from the single-process run (" + moved + " vehicles in different places)");
+        return matches;
+    }
+
+    /**
+     * @return The capacity of the rings, from the shared file's header.
+     */
+    private int capacity() {
+        return shared.getInt(12);
+    }
+
+    /**
+     * @return The shard whose region includes a column of the city.
+     */
+    private int regionOf(int x) {
+        return (int) ((long) x * shards / cityWidth);
+    }
+
+    private static int resultsBase(int shards) {
+        return HEADER_BYTES + SharedBarrier.bytesFor(shards);
+    }
+
+    private static int ringsBase(int shards) {
+        return resultsBase(shards) + shards * RESULT_BYTES;
+    }
+
+    /**
+     * @return The space taken by a ring, rounded up to a whole number of cache lines.
+     */
+    private static long ringBytes(int capacity) {
+        return (SharedRing.bytesFor(capacity) + 63) & ~63L;
+    }
+
+    private static long positionsBase(int shards, int capacity) {
+        return ringsBase(shards) + (long) shards * shards * ringBytes(capacity);
+    }
+}
@@ -0,0 +1,81 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A barrier between processes, held in a memory-mapped file.
+ * <p>
+ * Each party has a counter on its own cache line. To pass generation n of
+ * the barrier a party publishes n in its counter and waits until every
+ * other counter has reached n. Nothing is ever reset, so no party can
+ * overtake the barrier while another is still leaving it. While waiting,
+ * a party keeps doing other work, such as draining its message rings, so
+ * a party blocked on a full ring can never stall the barrier.
+ */
+public class SharedBarrier {
+    public static final long DEFAULT_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final int SLOT_BYTES = 64;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int parties;
+    private final int party;
+    private final long timeoutNanos;
+
+    /**
+     * Use a region of a mapped buffer as a barrier. The region must start at
+     * a multiple of 64 bytes and, when the file is new, be zero.
+     *
+     * @param buffer       The mapped buffer, in native byte order.
+     * @param base         The offset of the region in the buffer.
+     * @param parties      The number of parties.
+     * @param party        This party's number, from 0.
+     * @param timeoutNanos How long to wait for the other parties before giving up.
+     */
+    public SharedBarrier(ByteBuffer buffer, int base, int parties, int party, long timeoutNanos) {
+        this.buffer = buffer;
+        this.base = base;
+        this.parties = parties;
+        this.party = party;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * @param parties The number of parties.
+     * @return The size of the region a barrier for that many parties needs, in bytes.
+     */
+    public static int bytesFor(int parties) {
+        return parties * SLOT_BYTES;
+    }
+
+    /**
+     * Arrive at a generation of the barrier and wait for the other parties.
+     *
+     * @param generation  The generation, which must increase from one call to the next.
+     * @param whileWaiting Work to do while waiting.
+     * @throws IllegalStateException if another party does not arrive in time,
+     *                               as when its process has died.
+     */
+    public void await(long generation, Runnable whileWaiting) {
+        LONGS.setRelease(buffer, base + party * SLOT_BYTES, generation);
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (int other = 0; other < parties; other++) {
+            int spins = 0;
+            while ((long) LONGS.getAcquire(buffer, base + other * SLOT_BYTES) < generation) {
+                whileWaiting.run();
+                if (++spins % 1024 == 0) {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new IllegalStateException("Shard " + other + " did not reach barrier " + generation);
+                    }
+                    Thread.yield();
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
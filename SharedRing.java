@@ -0,0 +1,91 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A single-producer, single-consumer ring of fixed-size records in a region
+ * of a memory-mapped file, through which two processes that map the same
+ * file can pass messages without locks or system calls.
+ * <p>
+ * The region starts with the producer's position and the consumer's
+ * position, each on its own cache line, followed by the records. The
+ * producer writes a record and then publishes it by advancing its position
+ * with release semantics; the consumer reads the producer's position with
+ * acquire semantics before reading records, and frees them the same way.
+ */
+public class SharedRing {
+    public static final int RECORD_INTS = 10;
+    public static final int RECORD_BYTES = RECORD_INTS * Integer.BYTES;
+    static final int HEADER_BYTES = 128;
+    private static final int TAIL = 0;
+    private static final int HEAD = 64;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int capacity;
+
+    /**
+     * Use a region of a mapped buffer as a ring. The region must start at a
+     * multiple of 64 bytes and, when the file is new, be zero.
+     *
+     * @param buffer   The mapped buffer, in native byte order.
+     * @param base     The offset of the region in the buffer.
+     * @param capacity The number of records the ring holds.
+     */
+    public SharedRing(ByteBuffer buffer, int base, int capacity) {
+        this.buffer = buffer;
+        this.base = base;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param capacity The number of records in a ring.
+     * @return The size of the region a ring of that capacity needs, in bytes.
+     */
+    public static long bytesFor(int capacity) {
+        return HEADER_BYTES + (long) capacity * RECORD_BYTES;
+    }
+
+    /**
+     * Add a record if there is room. Called only by the producer.
+     *
+     * @param record The record, of {@link #RECORD_INTS} ints.
+     * @return true if the record was added, false if the ring was full.
+     */
+    public boolean offer(int[] record) {
+        long tail = (long) LONGS.getOpaque(buffer, base + TAIL);
+        long head = (long) LONGS.getAcquire(buffer, base + HEAD);
+        if (tail - head == capacity) {
+            return false;
+        }
+        int offset = base + HEADER_BYTES + (int) (tail % capacity) * RECORD_BYTES;
+        for (int i = 0; i < RECORD_INTS; i++) {
+            buffer.putInt(offset + i * Integer.BYTES, record[i]);
+        }
+        LONGS.setRelease(buffer, base + TAIL, tail + 1);
+        return true;
+    }
+
+    /**
+     * Take the oldest record if there is one. Called only by the consumer.
+     *
+     * @param record Receives the record, of {@link #RECORD_INTS} ints.
+     * @return true if a record was taken, false if the ring was empty.
+     */
+    public boolean poll(int[] record) {
+        long head = (long) LONGS.getOpaque(buffer, base + HEAD);
+        long tail = (long) LONGS.getAcquire(buffer, base + TAIL);
+        if (head == tail) {
+            return false;
+        }
+        int offset = base + HEADER_BYTES + (int) (head % capacity) * RECORD_BYTES;
+        for (int i = 0; i < RECORD_INTS; i++) {
+            record[i] = buffer.getInt(offset + i * Integer.BYTES);
+        }
+        LONGS.setRelease(buffer, base + HEAD, head + 1);
+        return true;
+    }
+}
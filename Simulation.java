@@ -1,58 +1,363 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 public class Simulation {
+    // How often, in steps, the heap in use is sampled for the report.
+    private static final int HEAP_SAMPLE_INTERVAL = 100;
+
     private final List<Actor> actors;
+    private final Scenario scenario;
+    private final City city;
+    private final TaxiCompany company;
+    private final PassengerSource source;
+    private final Pacer pacer;
+    private final StepTimeHistogram stepTimes;
     private int step;
 
+    // Figures for the scenario report.
+    private final long startupNanos;
+    // When the program was launched, and how long after that the first step began.
+    private long launchNanos;
+    private long timeToFirstStepNanos;
+    private long steadyStateSteps;
+    private long steadyStateNanos;
+    private long peakHeapUsed;
+    // Every steady-state step's duration, if kept, for exact percentiles.
+    private long[] steadyStateStepNanos;
+    // The number of trips in the trips file when the run ended.
+    private long tripsKept;
+
     /**
      * Construct the simulation and initialize its components.
      * Sets up the city, taxi company, passenger source, and GUI.
      */
     public Simulation() {
+        this(Scenario.defaults());
+    }
+
+    /**
+     * Construct the simulation described by a scenario.
+     *
+     * @param scenario The scenario to simulate (must not be null).
+     * @throws NullPointerException if scenario is null.
+     */
+    public Simulation(Scenario scenario) {
+        if (scenario == null) {
+            throw new NullPointerException("Scenario must not be null.");
+        }
+        long start = System.nanoTime();
+        this.scenario = scenario;
         actors = new LinkedList<>();
         step = 0;
-        City city = new City();
-        TaxiCompany company = new TaxiCompany(city);
-        PassengerSource source = new PassengerSource(city, company);
+        city = new City(scenario.getCityWidth(), scenario.getCityHeight());
+        company = new TaxiCompany(city, scenario.getNumberOfTaxis(), scenario.getFleetSeed(),
+                scenario.getQueueCapacity());
+        company.setMovementLogged(scenario.isMovementLogged());
+        company.setMaxWaitingPassengers(scenario.getMaxWaitingPassengers());
+        company.setPassengerPatience(scenario.getPassengerPatience());
+        company.setPooling(scenario.getPoolSeats(), scenario.getPoolDetour(), scenario.getPoolWait());
+        source = new PassengerSource(city, company,
+                scenario.getCreationProbability(), scenario.getDemandSeed());
+        source.setDemandRate(scenario.getDemandRate());
+        source.setPriorityProbabilities(scenario.getPremiumProbability(), scenario.getAccessibilityProbability());
+        stepTimes = new StepTimeHistogram();
+        pacer = new Pacer(scenario.getStepDelay(), scenario.getMaxCatchUpSteps());
+        pacer.setSpeed(scenario.getSpeed());
 
-        // Register vehicles, passenger source, and GUI as actors
-        actors.addAll(company.getVehicles());
+        for (int window : scenario.getKpiWindows()) {
+            company.addKpiWindow(window, KpiWindow.DEFAULT_BUCKETS);
+        }
+
+        // Register vehicles, passenger source, dispatcher, and GUI as actors
+        if (scenario.isMovementBatched()) {
+            actors.add(new BatchMovement(company.getVehicles()));
+        } else {
+            actors.addAll(company.getVehicles());
+        }
         actors.add(source);
-        actors.add(new CityGUI(city, company, source));
+        actors.add(company::dispatchPendingRequests);
+        // Publish the city as it stands at the end of each step, for the GUI
+        // and any other observer.
+        actors.add(city::publishSnapshot);
+        if (scenario.isGuiEnabled()) {
+            CityGUI gui = new CityGUI(city, company, source);
+            gui.bindControls(pacer);
+            actors.add(gui);
+        }
+        if (scenario.getDemandTrace() != null) {
+            RequestQueue queue = company.getRequestQueue();
+            queue.startProducer("trace-producer",
+                    new TraceRequestProducer(scenario.getDemandTrace(), city, queue, source));
+        }
+        startupNanos = System.nanoTime() - start;
+        launchNanos = start;
+        sampleHeap();
     }
 
     /**
-     * Run the simulation for a fixed number of steps.
-     * Delays between steps to allow the GUI to update.
+     * Run the simulation for the scenario's number of steps, then print
+     * a report of its performance.
+     * Steps are paced by the simulation's pacer to allow the GUI to update.
+     * If the scenario names a statistics file, every step is recorded in it.
+     * If it names a metrics port, metrics are served there while running.
+     * If it names a trips file, every completed trip is kept in it.
+     *
+     * @throws UncheckedIOException If the statistics or trips file cannot be
+     *                              written or the metrics server cannot be started.
      */
     public void run() {
-        for (int i = 0; i < 5000; i++) {
-            step++;
-            step();
-            wait(100);
+        int steps = scenario.getSteps();
+        // The first tenth of the run is treated as warm-up.
+        int warmupSteps = steps / 10;
+        MetricsServer metrics = null;
+        // Closed however the run ends, so the last rows and trips are always
+        // written and the trips file's mapping is released.
+        try (StepStatsWriter statsWriter = scenario.getStatsFile() == null ? null
+                : new StepStatsWriter(scenario.getStatsFile(), scenario.isStatsCompressed());
+             TripHistory trips = openTripHistory()) {
+            company.setTripHistory(trips);
+            if (scenario.getMetricsPort() > 0) {
+                metrics = new MetricsServer(scenario.getMetricsPort());
+                metrics.publishIfDue(step, company, source, stepTimes);
+            }
+            int lastPickups = company.getTotalPickups();
+            int lastDropoffs = company.getTotalDropoffs();
+            int lastMissed = source.getMissedPickups();
+            for (int i = 0; i < steps && !Thread.currentThread().isInterrupted(); i++) {
+                pacer.awaitNextStep();
+                if (i == 0) {
+                    timeToFirstStepNanos = System.nanoTime() - launchNanos;
+                }
+                step++;
+                long stepStart = System.nanoTime();
+                step();
+                long stepNanos = System.nanoTime() - stepStart;
+                stepTimes.record(stepNanos);
+                if (i >= warmupSteps) {
+                    if (steadyStateStepNanos != null) {
+                        steadyStateStepNanos[(int) steadyStateSteps] = stepNanos;
+                    }
+                    steadyStateNanos += stepNanos;
+                    steadyStateSteps++;
+                }
+                if (statsWriter != null) {
+                    int pickups = company.getTotalPickups();
+                    int dropoffs = company.getTotalDropoffs();
+                    int missed = source.getMissedPickups();
+                    statsWriter.record(step, pickups - lastPickups, dropoffs - lastDropoffs,
+                            missed - lastMissed, company.getActiveTaxiCount(),
+                            company.getRequestQueue().getDepth(), stepNanos);
+                    lastPickups = pickups;
+                    lastDropoffs = dropoffs;
+                    lastMissed = missed;
+                }
+                if (metrics != null) {
+                    metrics.publishIfDue(step, company, source, stepTimes);
+                }
+                if (step % HEAP_SAMPLE_INTERVAL == 0) {
+                    sampleHeap();
+                }
+            }
+            // A producer may have failed since the last dispatch.
+            company.getRequestQueue().checkProducers();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            // The history is closed by now, so the company must not append to it.
+            TripHistory trips = company.getTripHistory();
+            if (trips != null) {
+                tripsKept = trips.size();
+                company.setTripHistory(null);
+            }
+            company.getRequestQueue().shutdown();
+            if (metrics != null) {
+                metrics.close();
+            }
+        }
+        sampleHeap();
+        printReport();
+    }
+
+    /**
+     * Open a fresh trip history, if the scenario names a trips file. Each
+     * run starts a fresh history, as it does a fresh statistics file.
+     *
+     * @return The history, or null if the scenario names no trips file.
+     * @throws IOException If the trips file cannot be replaced.
+     */
+    private TripHistory openTripHistory() throws IOException {
+        if (scenario.getTripsFile() == null) {
+            return null;
         }
+        Files.deleteIfExists(scenario.getTripsFile());
+        return new TripHistory(scenario.getTripsFile());
     }
 
     /**
      * Take a single step in the simulation by allowing each actor to act.
      */
     public void step() {
+        StepEvent event = new StepEvent();
+        event.begin();
+        company.setStep(step);
         for (Actor actor : actors) {
             actor.act();
         }
+        if (event.shouldCommit()) {
+            event.step = step;
+            event.actors = actors.size();
+            event.commit();
+        }
     }
 
     /**
-     * Pause execution for a short time to simulate delay and allow GUI updates.
+     * @return The pacer deciding when each step runs.
+     */
+    public Pacer getPacer() {
+        return pacer;
+    }
+
+    /**
+     * @return The number of steps taken so far.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return The time taken to set up the simulation, in nanoseconds.
+     */
+    public long getStartupNanos() {
+        return startupNanos;
+    }
+
+    /**
+     * Set when the program was launched, so that the time to the first step
+     * includes everything before the simulation was constructed. Without
+     * it, the time is measured from the start of construction.
      *
-     * @param milliseconds The duration to wait in milliseconds.
+     * @param launchNanos The value of {@link System#nanoTime()} at launch.
+     */
+    public void setLaunchNanos(long launchNanos) {
+        this.launchNanos = launchNanos;
+    }
+
+    /**
+     * @return The time from launch to the start of the first step, in
+     * nanoseconds, or 0 if no step has run.
+     */
+    public long getTimeToFirstStepNanos() {
+        return timeToFirstStepNanos;
+    }
+
+    /**
+     * @return The steps per second achieved after warm-up, not counting
+     * the delay between steps.
      */
-    private void wait(int milliseconds) {
-        try {
-            Thread.sleep(milliseconds);
-        } catch (InterruptedException e) {
-            // Interrupted while sleeping — ignore.
+    public double getSteadyStateStepsPerSecond() {
+        if (steadyStateNanos == 0) {
+            return 0;
         }
+        return steadyStateSteps * 1e9 / steadyStateNanos;
+    }
+
+    /**
+     * Keep the duration of every step after warm-up, so that exact
+     * percentiles can be worked out rather than estimated from the
+     * histogram. Must be called before the simulation runs.
+     */
+    public void keepStepTimes() {
+        steadyStateStepNanos = new long[scenario.getSteps() - scenario.getSteps() / 10];
+    }
+
+    /**
+     * @return The durations of the steps after warm-up, in nanoseconds and
+     * in the order they ran, or an empty array if they were not kept.
+     */
+    public long[] getSteadyStateStepNanos() {
+        if (steadyStateStepNanos == null) {
+            return new long[0];
+        }
+        return Arrays.copyOf(steadyStateStepNanos, (int) steadyStateSteps);
+    }
+
+    /**
+     * @return The histogram of step durations.
+     */
+    public StepTimeHistogram getStepTimes() {
+        return stepTimes;
+    }
+
+    /**
+     * @return The city being simulated, whose snapshot is published after every step.
+     */
+    public City getCity() {
+        return city;
+    }
+
+    /**
+     * @return The taxi company being simulated.
+     */
+    public TaxiCompany getCompany() {
+        return company;
+    }
+
+    /**
+     * @return The source of passengers.
+     */
+    public PassengerSource getSource() {
+        return source;
+    }
+
+    /**
+     * @return The largest amount of heap seen in use, in bytes.
+     */
+    public long getPeakHeapUsed() {
+        return peakHeapUsed;
+    }
+
+    /**
+     * Print the scenario's startup time, steady-state speed, heap use and
+     * final statistics.
+     */
+    public void printReport() {
+        System.out.println(scenario);
+        System.out.printf("  Startup time:         %.1f ms%n", startupNanos / 1e6);
+        System.out.printf("  Time to first step:   %.1f ms%n", timeToFirstStepNanos / 1e6);
+        System.out.printf("  Steady-state rate:    %.1f steps/sec%n", getSteadyStateStepsPerSecond());
+        System.out.printf("  Lag behind real time: %.1f ms%n", pacer.getLagNanos() / 1e6);
+        System.out.printf("  Peak heap used:       %.1f MB%n", peakHeapUsed / (1024.0 * 1024.0));
+        RequestQueue queue = company.getRequestQueue();
+        System.out.printf("  Request queue:        peak depth %d, mean latency %.1f us, max latency %.1f us%n",
+                queue.getPeakDepth(), queue.getMeanLatencyNanos() / 1e3, queue.getMaxLatencyNanos() / 1e3);
+        System.out.printf("  Pickups: %d  Dropoffs: %d  Missed: %d  Abandoned: %d  Created: %d  Waiting: %d%n",
+                company.getTotalPickups(), company.getTotalDropoffs(), source.getMissedPickups(),
+                company.getTotalAbandoned(), source.getTotalPassengersCreated(),
+                company.getWaitingPassengerCount());
+        if (company.getRidePool() != null) {
+            System.out.printf("  Shared rides:         %d passengers joined a taxi already carrying others%n",
+                    company.getTotalPooled());
+        }
+        if (scenario.getTripsFile() != null) {
+            System.out.printf("  Trips kept:           %d in %s%n", tripsKept, scenario.getTripsFile());
+        }
+        for (KpiWindow window : company.getKpiWindows()) {
+            System.out.printf("  Last %d steps:  pickups %d, missed %d, utilisation %.1f%%%n",
+                    window.getSteps(), window.getPickups(), window.getMissed(),
+                    100 * window.getUtilisation(company.getVehicles().size()));
+        }
+    }
+
+    /**
+     * Record the heap currently in use if it is the most seen so far.
+     */
+    private void sampleHeap() {
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        peakHeapUsed = Math.max(peakHeapUsed, used);
     }
 }
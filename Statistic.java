@@ -0,0 +1,12 @@
+/**
+ * A running figure that the taxi company or passenger source reports to
+ * its {@link StatsListener}s as it changes.
+ */
+public enum Statistic {
+    PICKUPS,
+    DROPOFFS,
+    MISSED,
+    CREATED,
+    ABANDONED,
+    ACTIVE_TAXIS
+}
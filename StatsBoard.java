@@ -0,0 +1,73 @@
+/**
+ * Keeps the running figures of a simulation up to date from the changes
+ * pushed to it, and coalesces them: any number of changes between two
+ * looks at the board are seen as a single update, and a look when nothing
+ * has changed costs nothing. A display can therefore redraw its figures
+ * at most once per frame, and only when they have changed, however many
+ * vehicles or events there are.
+ */
+public class StatsBoard implements StatsListener {
+    private final int[] values;
+    // Whether any figure has changed since the last look.
+    private boolean changed;
+
+    /**
+     * Create a board with every figure at zero.
+     */
+    public StatsBoard() {
+        values = new int[Statistic.values().length];
+        changed = true;
+    }
+
+    /**
+     * Start a board at the current figures of a company and source, and
+     * keep it up to date with their changes.
+     *
+     * @param company The company (must not be null).
+     * @param source  The passenger source (must not be null).
+     * @return The board.
+     * @throws NullPointerException if either is null.
+     */
+    public static StatsBoard follow(TaxiCompany company, PassengerSource source) {
+        StatsBoard board = new StatsBoard();
+        board.values[Statistic.PICKUPS.ordinal()] = company.getTotalPickups();
+        board.values[Statistic.DROPOFFS.ordinal()] = company.getTotalDropoffs();
+        board.values[Statistic.ABANDONED.ordinal()] = company.getTotalAbandoned();
+        board.values[Statistic.ACTIVE_TAXIS.ordinal()] = company.getActiveTaxiCount();
+        board.values[Statistic.MISSED.ordinal()] = source.getMissedPickups();
+        board.values[Statistic.CREATED.ordinal()] = source.getTotalPassengersCreated();
+        company.addStatsListener(board);
+        source.addStatsListener(board);
+        return board;
+    }
+
+    /**
+     * Add a change to a figure.
+     *
+     * @param statistic The figure.
+     * @param delta     How much it changed by.
+     */
+    public void statChanged(Statistic statistic, int delta) {
+        values[statistic.ordinal()] += delta;
+        changed = true;
+    }
+
+    /**
+     * @param statistic A figure.
+     * @return Its current value.
+     */
+    public int get(Statistic statistic) {
+        return values[statistic.ordinal()];
+    }
+
+    /**
+     * Check whether any figure has changed since the last check.
+     *
+     * @return true the first time, and after any change since the last check.
+     */
+    public boolean takeChanged() {
+        boolean result = changed;
+        changed = false;
+        return result;
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * Told each time one of the running figures of a taxi company or passenger
+ * source changes, so the figures need not be polled.
+ */
+public interface StatsListener {
+    /**
+     * Called when a figure changes.
+     *
+     * @param statistic The figure.
+     * @param delta     How much it changed by.
+     */
+    public void statChanged(Statistic statistic, int delta);
+}
@@ -0,0 +1,20 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event covering one whole step of the simulation.
+ */
+@Name("taxi.Step")
+@Label("Simulation Step")
+@Category("Taxi Simulation")
+@Description("One step of the simulation, in which every actor acts once")
+public class StepEvent extends Event {
+    @Label("Step")
+    int step;
+
+    @Label("Actors")
+    int actors;
+}
@@ -0,0 +1,110 @@
+/**
+ * A block of consecutive rows of per-step statistics, held column by column
+ * in primitive arrays. Chunks are filled by a {@link StepStatsWriter} and
+ * handed to its background thread, and are refilled by a
+ * {@link StepStatsReader} for each chunk it scans.
+ */
+public class StepStatsChunk {
+    private final int[][] intColumns;
+    private final long[] stepNanos;
+    private long firstStep;
+    private int rows;
+
+    /**
+     * Create an empty chunk.
+     *
+     * @param capacity The most rows the chunk can hold.
+     */
+    public StepStatsChunk(int capacity) {
+        intColumns = new int[StepStatsColumn.INT_COLUMNS][capacity];
+        stepNanos = new long[capacity];
+    }
+
+    /**
+     * Add a row to the chunk.
+     *
+     * @param step        The step the row describes.
+     * @param pickups     Pickups made in the step.
+     * @param dropoffs    Dropoffs made in the step.
+     * @param missed      Pickups missed in the step.
+     * @param activeTaxis Taxis busy at the end of the step.
+     * @param queueDepth  Requests waiting for dispatch at the end of the step.
+     * @param nanos       The time the step took, in nanoseconds.
+     */
+    void add(long step, int pickups, int dropoffs, int missed, int activeTaxis, int queueDepth, long nanos) {
+        if (rows == 0) {
+            firstStep = step;
+        }
+        intColumns[0][rows] = pickups;
+        intColumns[1][rows] = dropoffs;
+        intColumns[2][rows] = missed;
+        intColumns[3][rows] = activeTaxis;
+        intColumns[4][rows] = queueDepth;
+        stepNanos[rows] = nanos;
+        rows++;
+    }
+
+    /**
+     * Empty the chunk so it can be reused.
+     *
+     * @param firstStep The step of the chunk's first row.
+     * @param rows      The number of rows the chunk will hold.
+     */
+    void reset(long firstStep, int rows) {
+        this.firstStep = firstStep;
+        this.rows = rows;
+    }
+
+    /**
+     * @return Whether the chunk has no room for another row.
+     */
+    boolean isFull() {
+        return rows == stepNanos.length;
+    }
+
+    /**
+     * @return The step of the chunk's first row.
+     */
+    public long getFirstStep() {
+        return firstStep;
+    }
+
+    /**
+     * @return The number of rows in the chunk.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The most rows the chunk can hold.
+     */
+    public int getCapacity() {
+        return stepNanos.length;
+    }
+
+    /**
+     * Get the values of an int column. Only the first {@link #getRows()}
+     * values are part of the chunk.
+     *
+     * @param column Any column but {@link StepStatsColumn#STEP_NANOS}.
+     * @return The column's values.
+     * @throws IllegalArgumentException if the column holds longs.
+     */
+    public int[] getInts(StepStatsColumn column) {
+        if (column == StepStatsColumn.STEP_NANOS) {
+            throw new IllegalArgumentException(column + " is a long column");
+        }
+        return intColumns[column.ordinal()];
+    }
+
+    /**
+     * Get the step times. Only the first {@link #getRows()} values are part
+     * of the chunk.
+     *
+     * @return The time each step took, in nanoseconds.
+     */
+    public long[] getStepNanos() {
+        return stepNanos;
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * The columns recorded for every step of a run by a {@link StepStatsWriter}.
+ * Every column but the step time is a 4-byte int; the step time is an
+ * 8-byte long.
+ */
+public enum StepStatsColumn {
+    PICKUPS,
+    DROPOFFS,
+    MISSED_PICKUPS,
+    ACTIVE_TAXIS,
+    QUEUE_DEPTH,
+    STEP_NANOS;
+
+    // The number of int columns; they come first, in the order above.
+    static final int INT_COLUMNS = 5;
+
+    /**
+     * @return The width of one value of the column, in bytes.
+     */
+    public int getWidth() {
+        return this == STEP_NANOS ? Long.BYTES : Integer.BYTES;
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read a statistics file written by a {@link StepStatsWriter}.
+ * <p>
+ * The file is scanned chunk by chunk. Each chunk is decoded straight into
+ * the primitive column arrays of a single reused {@link StepStatsChunk},
+ * so a scan allocates nothing per row and is limited by the disk and, for
+ * compressed files, by decompression.
+ */
+public class StepStatsReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final int chunkRows;
+
+    /**
+     * Open a statistics file.
+     *
+     * @param file The file to read.
+     * @throws IOException If the file cannot be read or is not a statistics file.
+     */
+    public StepStatsReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(StepStatsWriter.FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        chunkRows = header.getInt();
+        int columns = header.getInt();
+        if (magic != StepStatsWriter.MAGIC || version != StepStatsWriter.VERSION
+                || columns != StepStatsColumn.values().length || chunkRows < 1) {
+            channel.close();
+            throw new IOException(file + " is not a step statistics file");
+        }
+    }
+
+    /**
+     * Pass every chunk of the file, in order, to a visitor. The chunk
+     * object is reused, so the visitor must not keep it.
+     *
+     * @param visitor The visitor to receive each chunk.
+     * @return The total number of rows scanned.
+     * @throws IOException If the file cannot be read or is corrupt.
+     */
+    public long scan(Consumer<StepStatsChunk> visitor) throws IOException {
+        StepStatsChunk chunk = new StepStatsChunk(chunkRows);
+        ByteBuffer chunkHeader = ByteBuffer.allocate(StepStatsWriter.CHUNK_HEADER_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer raw = ByteBuffer.allocate(chunkRows * StepStatsWriter.ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer stored = ByteBuffer.allocate(raw.capacity());
+        Inflater inflater = new Inflater();
+        long position = StepStatsWriter.FILE_HEADER_BYTES;
+        long totalRows = 0;
+        try {
+            while (position < channel.size()) {
+                chunkHeader.clear();
+                readFully(chunkHeader, position);
+                chunkHeader.flip();
+                long firstStep = chunkHeader.getLong();
+                int rows = chunkHeader.getInt();
+                int flags = chunkHeader.getInt();
+                int length = chunkHeader.getInt();
+                if (rows < 1 || rows > chunkRows || length < 0) {
+                    throw new IOException("Corrupt chunk at offset " + position);
+                }
+                position += StepStatsWriter.CHUNK_HEADER_BYTES;
+
+                if ((flags & StepStatsWriter.FLAG_COMPRESSED) != 0) {
+                    if (stored.capacity() < length) {
+                        stored = ByteBuffer.allocate(length);
+                    }
+                    stored.clear().limit(length);
+                    readFully(stored, position);
+                    inflater.reset();
+                    inflater.setInput(stored.array(), 0, length);
+                    int expected = rows * StepStatsWriter.ROW_BYTES;
+                    int inflated = 0;
+                    while (inflated < expected && !inflater.finished()) {
+                        int n = inflater.inflate(raw.array(), inflated, expected - inflated);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        inflated += n;
+                    }
+                    if (inflated != expected) {
+                        throw new IOException("Corrupt compressed chunk at offset " + position);
+                    }
+                    raw.clear().limit(expected);
+                } else {
+                    if (length != rows * StepStatsWriter.ROW_BYTES) {
+                        throw new IOException("Corrupt chunk at offset " + position);
+                    }
+                    raw.clear().limit(length);
+                    readFully(raw, position);
+                    raw.flip();
+                }
+                position += length;
+
+                decode(raw, chunk, firstStep, rows);
+                visitor.accept(chunk);
+                totalRows += rows;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed chunk", e);
+        } finally {
+            inflater.end();
+        }
+        return totalRows;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Copy a chunk's columns out of a buffer into the chunk's arrays.
+     */
+    private static void decode(ByteBuffer raw, StepStatsChunk chunk, long firstStep, int rows) {
+        chunk.reset(firstStep, rows);
+        for (StepStatsColumn column : StepStatsColumn.values()) {
+            if (column == StepStatsColumn.STEP_NANOS) {
+                raw.asLongBuffer().get(chunk.getStepNanos(), 0, rows);
+                raw.position(raw.position() + rows * Long.BYTES);
+            } else {
+                raw.asIntBuffer().get(chunk.getInts(column), 0, rows);
+                raw.position(raw.position() + rows * Integer.BYTES);
+            }
+        }
+    }
+
+    /**
+     * Fill a buffer from the file, starting at a given offset.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of statistics file");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Print a summary of a statistics file: totals for each column and the
+     * mean step time.
+     *
+     * @param args The path of the statistics file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java StepStatsReader <stats-file>");
+            System.exit(1);
+        }
+        long[] totals = new long[StepStatsColumn.values().length];
+        long start = System.nanoTime();
+        long rows;
+        try (StepStatsReader reader = new StepStatsReader(Path.of(args[0]))) {
+            rows = reader.scan(chunk -> {
+                for (StepStatsColumn column : StepStatsColumn.values()) {
+                    long sum = 0;
+                    if (column == StepStatsColumn.STEP_NANOS) {
+                        long[] values = chunk.getStepNanos();
+                        for (int i = 0; i < chunk.getRows(); i++) {
+                            sum += values[i];
+                        }
+                    } else {
+                        int[] values = chunk.getInts(column);
+                        for (int i = 0; i < chunk.getRows(); i++) {
+                            sum += values[i];
+                        }
+                    }
+                    totals[column.ordinal()] += sum;
+                }
+            });
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d steps scanned in %.2f s (%.1f M rows/sec)%n", rows, seconds, rows / seconds / 1e6);
+        System.out.printf("Pickups: %d  Dropoffs: %d  Missed: %d%n",
+                totals[StepStatsColumn.PICKUPS.ordinal()], totals[StepStatsColumn.DROPOFFS.ordinal()],
+                totals[StepStatsColumn.MISSED_PICKUPS.ordinal()]);
+        if (rows > 0) {
+            System.out.printf("Mean active taxis: %.2f  Mean queue depth: %.2f  Mean step time: %.1f us%n",
+                    (double) totals[StepStatsColumn.ACTIVE_TAXIS.ordinal()] / rows,
+                    (double) totals[StepStatsColumn.QUEUE_DEPTH.ordinal()] / rows,
+                    totals[StepStatsColumn.STEP_NANOS.ordinal()] / 1e3 / rows);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Write per-step statistics to a compact columnar binary file.
+ * <p>
+ * Rows are collected column by column into fixed-size chunks on the
+ * simulation thread. Full chunks are handed to a background thread that
+ * encodes them and writes them through a {@link FileChannel}, so recording
+ * a step never waits for the disk. Chunks can optionally be compressed.
+ * <p>
+ * The file starts with a 16-byte header: the magic number, the format
+ * version, the chunk capacity and the number of columns. Each chunk then
+ * has a 20-byte header (first step, row count, flags and stored length)
+ * followed by its columns, one after another, in {@link StepStatsColumn}
+ * order. All values are little-endian.
+ */
+public class StepStatsWriter implements AutoCloseable {
+    static final int MAGIC = 0x54585354;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 16;
+    static final int CHUNK_HEADER_BYTES = 20;
+    static final int FLAG_COMPRESSED = 1;
+    static final int ROW_BYTES = StepStatsColumn.INT_COLUMNS * Integer.BYTES + Long.BYTES;
+    public static final int DEFAULT_CHUNK_ROWS = 65536;
+
+    // Marks the end of the chunks sent to the background thread.
+    private static final StepStatsChunk END = new StepStatsChunk(0);
+
+    private final FileChannel channel;
+    private final boolean compressed;
+    private final int chunkRows;
+    private final BlockingQueue<StepStatsChunk> filled;
+    private final Queue<StepStatsChunk> spare;
+    private final Thread writerThread;
+    private StepStatsChunk current;
+    private long rowsRecorded;
+    private boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Create a writer for a new statistics file, replacing any existing file.
+     *
+     * @param file       The file to write.
+     * @param compressed Whether chunks should be compressed.
+     * @throws IOException If the file cannot be created.
+     */
+    public StepStatsWriter(Path file, boolean compressed) throws IOException {
+        this(file, compressed, DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * Create a writer for a new statistics file, replacing any existing file.
+     *
+     * @param file       The file to write.
+     * @param compressed Whether chunks should be compressed.
+     * @param chunkRows  The number of rows in each chunk.
+     * @throws IOException If the file cannot be created.
+     * @throws IllegalArgumentException if chunkRows is not positive.
+     */
+    public StepStatsWriter(Path file, boolean compressed, int chunkRows) throws IOException {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("Chunk rows must be positive: " + chunkRows);
+        }
+        this.compressed = compressed;
+        this.chunkRows = chunkRows;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(chunkRows).putInt(StepStatsColumn.values().length);
+        writeFully(header.flip());
+
+        filled = new LinkedBlockingQueue<>();
+        spare = new ConcurrentLinkedQueue<>();
+        current = new StepStatsChunk(chunkRows);
+        writerThread = new Thread(this::writeChunks, "step-stats-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Record the statistics of one step.
+     *
+     * @param step        The step number.
+     * @param pickups     Pickups made in the step.
+     * @param dropoffs    Dropoffs made in the step.
+     * @param missed      Pickups missed in the step.
+     * @param activeTaxis Taxis busy at the end of the step.
+     * @param queueDepth  Requests waiting for dispatch at the end of the step.
+     * @param stepNanos   The time the step took, in nanoseconds.
+     * @throws IllegalStateException if the writer has been closed.
+     */
+    public void record(long step, int pickups, int dropoffs, int missed,
+                       int activeTaxis, int queueDepth, long stepNanos) {
+        if (closed) {
+            throw new IllegalStateException("Statistics writer is closed");
+        }
+        current.add(step, pickups, dropoffs, missed, activeTaxis, queueDepth, stepNanos);
+        rowsRecorded++;
+        if (current.isFull()) {
+            filled.add(current);
+            StepStatsChunk next = spare.poll();
+            current = next != null ? next : new StepStatsChunk(chunkRows);
+            current.reset(0, 0);
+        }
+    }
+
+    /**
+     * @return The number of rows recorded so far.
+     */
+    public long getRowsRecorded() {
+        return rowsRecorded;
+    }
+
+    /**
+     * Write any remaining rows, wait for the background thread to finish
+     * and close the file.
+     *
+     * @throws IOException If any chunk could not be written.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current.getRows() > 0) {
+            filled.add(current);
+        }
+        filled.add(END);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write chunks as they are filled, until the end marker arrives.
+     * Runs on the background thread.
+     */
+    private void writeChunks() {
+        ByteBuffer raw = ByteBuffer.allocate(chunkRows * ROW_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] packed = new byte[raw.capacity() + raw.capacity() / 100 + 64];
+        ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            while (true) {
+                StepStatsChunk chunk = filled.take();
+                if (chunk == END) {
+                    break;
+                }
+                if (failure == null) {
+                    try {
+                        encode(chunk, raw);
+                        ByteBuffer payload = raw;
+                        int flags = 0;
+                        if (deflater != null) {
+                            deflater.reset();
+                            deflater.setInput(raw.array(), 0, raw.limit());
+                            deflater.finish();
+                            int length = 0;
+                            while (!deflater.finished()) {
+                                if (length == packed.length) {
+                                    packed = Arrays.copyOf(packed, packed.length * 2);
+                                }
+                                length += deflater.deflate(packed, length, packed.length - length);
+                            }
+                            payload = ByteBuffer.wrap(packed, 0, length);
+                            flags = FLAG_COMPRESSED;
+                        }
+                        chunkHeader.clear();
+                        chunkHeader.putLong(chunk.getFirstStep()).putInt(chunk.getRows())
+                                .putInt(flags).putInt(payload.remaining());
+                        writeFully(chunkHeader.flip());
+                        writeFully(payload);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                spare.add(chunk);
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Statistics writer interrupted", e);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Lay out a chunk's columns one after another in a buffer.
+     *
+     * @param chunk The chunk to encode.
+     * @param raw   The buffer to fill; flipped ready for reading.
+     */
+    private static void encode(StepStatsChunk chunk, ByteBuffer raw) {
+        int rows = chunk.getRows();
+        raw.clear();
+        for (StepStatsColumn column : StepStatsColumn.values()) {
+            if (column == StepStatsColumn.STEP_NANOS) {
+                raw.asLongBuffer().put(chunk.getStepNanos(), 0, rows);
+                raw.position(raw.position() + rows * Long.BYTES);
+            } else {
+                raw.asIntBuffer().put(chunk.getInts(column), 0, rows);
+                raw.position(raw.position() + rows * Integer.BYTES);
+            }
+        }
+        raw.flip();
+    }
+
+    /**
+     * Write the whole of a buffer to the file.
+     *
+     * @param buffer The buffer to write.
+     * @throws IOException If the write fails.
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
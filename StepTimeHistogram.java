@@ -0,0 +1,99 @@
+import java.util.Arrays;
+
+/**
+ * A histogram of step durations with fixed bucket bounds, from one
+ * microsecond to ten seconds. Recording a step is a short search and an
+ * increment, and allocates nothing.
+ */
+public class StepTimeHistogram {
+    // Upper bounds of the buckets, in nanoseconds.
+    private static final long[] BOUNDS = {
+            1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 10_000_000_000L
+    };
+
+    // Counts of steps in each bucket; the last counts steps above every bound.
+    private final long[] counts;
+    private long count;
+    private long sumNanos;
+
+    /**
+     * Create an empty histogram.
+     */
+    public StepTimeHistogram() {
+        counts = new long[BOUNDS.length + 1];
+    }
+
+    /**
+     * Record the duration of a step.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        int bucket = Arrays.binarySearch(BOUNDS, nanos);
+        if (bucket < 0) {
+            bucket = -bucket - 1;
+        }
+        counts[bucket]++;
+        count++;
+        sumNanos += nanos;
+    }
+
+    /**
+     * @return The upper bounds of the buckets, in nanoseconds.
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * @return A copy of the count of steps in each bucket, with one more
+     * entry than there are bounds for steps above every bound.
+     */
+    public long[] getCounts() {
+        return counts.clone();
+    }
+
+    /**
+     * @return The number of steps recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Estimate a percentile of the step durations. The result is the upper
+     * bound of the bucket the percentile falls in, so it is never below the
+     * true value.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The estimate in nanoseconds, 0 if nothing has been recorded,
+     * or Long.MAX_VALUE if it is above every bound.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The total duration of all steps recorded, in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos;
+    }
+}
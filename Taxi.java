@@ -1,11 +1,17 @@
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class Taxi extends Vehicle implements DrawableItem {
-    private Passenger passenger;
-    private final Image emptyImage;
-    private final Image passengerImage;
+    // The passengers on board.
+    private final List<Passenger> passengers;
+    // The stops still to make once a passenger is on board, in order.
+    private final List<RouteStop> route;
+    // The most passengers the taxi carries at once.
+    private int seats;
     private int idleSteps;
 
     /**
@@ -17,11 +23,19 @@ public class Taxi extends Vehicle implements DrawableItem {
      */
     public Taxi(TaxiCompany company, Location location) {
         super(company, location);
+        passengers = new ArrayList<>(1);
+        route = new ArrayList<>(1);
+        seats = 1;
+    }
 
-        emptyImage = new ImageIcon(Objects.requireNonNull(getClass().getResource(
+    /**
+     * The images shared by all taxis, loaded the first time one is drawn
+     * rather than once per taxi, so headless fleets never decode them.
+     */
+    private static class Images {
+        static final Image EMPTY = new ImageIcon(Objects.requireNonNull(Taxi.class.getResource(
                 "images/taxi.jpg"))).getImage();
-
-        passengerImage = new ImageIcon(Objects.requireNonNull(getClass().getResource(
+        static final Image WITH_PASSENGER = new ImageIcon(Objects.requireNonNull(Taxi.class.getResource(
                 "images/taxi+person.jpg"))).getImage();
     }
 
@@ -33,24 +47,44 @@ public class Taxi extends Vehicle implements DrawableItem {
      */
     public void act() {
         Location target = getTargetLocation();
+        if (target == null) {
+            advance(null, null, false);
+        } else {
+            Location next = getLocation().nextLocation(target);
+            advance(target, next, next.equals(target));
+        }
+    }
 
+    /**
+     * Act as {@link #act()} does, given where the taxi's next move along
+     * the way to its target takes it. This lets a batch of taxis have
+     * their moves worked out together.
+     *
+     * @param target  The taxi's current target location, or null if it has none.
+     * @param next    The location one step from the current location towards
+     *                the target, or null if there is no target.
+     * @param arrived Whether next is the target.
+     */
+    void advance(Location target, Location next, boolean arrived) {
         if (isFree()) {
             idleSteps++;
         }
 
         if (target != null) {
-            Location next = getLocation().nextLocation(target);
-            System.out.println("Taxi moving from " + getLocation() + " to " + next);
+            if (isLogged()) {
+                log("Taxi moving from " + getLocation() + " to " + next);
+            }
             setLocation(next);
+            if (seats > 1) {
+                notifyMoved();
+            }
 
-            if (next.equals(target)) {
-                if (passenger != null) {
-                    System.out.println("Arrived at passenger destination: " + target);
-                    notifyPassengerArrival(passenger);
-                    offloadPassenger();
-                } else {
-                    System.out.println("Arrived at pickup location: " + target);
+            if (arrived) {
+                if (route.isEmpty()) {
+                    log("Arrived at pickup location: " + target);
                     notifyPickupArrival();
+                } else {
+                    makeStops();
                 }
             }
         } else {
@@ -58,13 +92,48 @@ public class Taxi extends Vehicle implements DrawableItem {
         }
     }
 
+    /**
+     * Make every stop on the route at the current location, in order, and
+     * head for the next.
+     */
+    private void makeStops() {
+        Location here = getLocation();
+        while (!route.isEmpty() && route.get(0).getLocation().equals(here)) {
+            RouteStop stop = route.remove(0);
+            Passenger passenger = stop.getPassenger();
+            if (stop.isPickup()) {
+                log("Arrived at shared pickup location: " + here);
+                passengers.add(passenger);
+                notifyPooledPickup(passenger);
+            } else {
+                log("Arrived at passenger destination: " + here);
+                passengers.remove(passenger);
+                // The company sees whether the taxi is now free.
+                updateTarget();
+                notifyPassengerArrival(passenger);
+            }
+        }
+        updateTarget();
+    }
+
+    /**
+     * Head for the next stop on the route, or stop if there is none.
+     */
+    private void updateTarget() {
+        if (route.isEmpty()) {
+            clearTargetLocation();
+        } else {
+            setTargetLocation(route.get(0).getLocation());
+        }
+    }
+
     /**
      * Check if the taxi is free (no target and no passenger).
      *
      * @return true if taxi is available, false otherwise.
      */
     public boolean isFree() {
-        return getTargetLocation() == null && passenger == null;
+        return getTargetLocation() == null && passengers.isEmpty();
     }
 
     /**
@@ -93,16 +162,82 @@ public class Taxi extends Vehicle implements DrawableItem {
         if (passenger == null) {
             throw new IllegalArgumentException("Passenger cannot be null");
         }
-        this.passenger = passenger;
-        setTargetLocation(passenger.getDestination());
+        passengers.add(passenger);
+        route.add(new RouteStop(passenger, false));
+        updateTarget();
+    }
+
+    /**
+     * Add a passenger who shares the taxi's trip to its route. The pickup
+     * is made before the stop at pickupIndex and the drop-off before the
+     * stop at dropoffIndex, both counted in the route as it is now.
+     *
+     * @param passenger    The passenger (not null).
+     * @param pickupIndex  Where the pickup goes in the route.
+     * @param dropoffIndex Where the drop-off goes in the route, no earlier than the pickup.
+     * @throws IllegalArgumentException if passenger is null, the taxi has no
+     *                                  passenger to share with or the indices are out of range.
+     */
+    public void addRider(Passenger passenger, int pickupIndex, int dropoffIndex) {
+        if (passenger == null) {
+            throw new IllegalArgumentException("Passenger cannot be null");
+        }
+        if (route.isEmpty()) {
+            throw new IllegalArgumentException("Cannot share a taxi that has no passenger");
+        }
+        if (pickupIndex < 0 || pickupIndex > dropoffIndex || dropoffIndex > route.size()) {
+            throw new IllegalArgumentException("Invalid stops: " + pickupIndex + ", " + dropoffIndex);
+        }
+        route.add(dropoffIndex, new RouteStop(passenger, false));
+        route.add(pickupIndex, new RouteStop(passenger, true));
+        updateTarget();
     }
 
     /**
-     * Drop off the current passenger and clear the target.
+     * Drop off every passenger whose destination is the current location,
+     * and head for the next stop.
      */
     public void offloadPassenger() {
-        passenger = null;
-        clearTargetLocation();
+        Location here = getLocation();
+        route.removeIf(stop -> !stop.isPickup() && stop.getLocation().equals(here));
+        passengers.removeIf(passenger -> passenger.getDestination().equals(here));
+        updateTarget();
+    }
+
+    /**
+     * @return The most passengers the taxi carries at once.
+     */
+    public int getSeats() {
+        return seats;
+    }
+
+    /**
+     * Set the most passengers the taxi carries at once. With more than one
+     * seat, the company may add passengers to the taxi's trip.
+     *
+     * @param seats The number of seats.
+     * @throws IllegalArgumentException if seats is not positive.
+     */
+    public void setSeats(int seats) {
+        if (seats < 1) {
+            throw new IllegalArgumentException("Seats must be positive: " + seats);
+        }
+        this.seats = seats;
+    }
+
+    /**
+     * @return The number of passengers on board.
+     */
+    public int getPassengerCount() {
+        return passengers.size();
+    }
+
+    /**
+     * @return The stops still to make for the passengers on board or
+     * sharing the trip, in order. Empty while heading for a first pickup.
+     */
+    public List<RouteStop> getRoute() {
+        return Collections.unmodifiableList(route);
     }
 
     /**
@@ -111,7 +246,14 @@ public class Taxi extends Vehicle implements DrawableItem {
      * @return Image of empty or occupied taxi.
      */
     public Image getImage() {
-        return (passenger != null) ? passengerImage : emptyImage;
+        return passengers.isEmpty() ? Images.EMPTY : Images.WITH_PASSENGER;
+    }
+
+    /**
+     * @return TAXI if the taxi is empty, OCCUPIED_TAXI if it carries anyone.
+     */
+    public ItemType getType() {
+        return passengers.isEmpty() ? ItemType.TAXI : ItemType.OCCUPIED_TAXI;
     }
 
     /**
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class TaxiCompany {
     // List of vehicles operated by the company.
@@ -12,7 +13,54 @@ public class TaxiCompany {
     // Maps vehicles to their assigned passengers.
     private final Map<Vehicle, Passenger> assignments;
 
-    private static final int NUMBER_OF_TAXIS = 3;
+    public static final int NUMBER_OF_TAXIS = 3;
+    // Fleets at least this large are created in parallel.
+    private static final int PARALLEL_SETUP_THRESHOLD = 10_000;
+    // The most requests the dispatcher takes from the queue at a time.
+    private static final int DISPATCH_BATCH_SIZE = 1024;
+
+    // Pickup requests waiting to be dispatched.
+    private final RequestQueue requests;
+    private final List<PickupRequest> dispatchBatch;
+    // Passengers waiting for a vehicle to become free.
+    private final PassengerStore waitingPassengers;
+    private int maxWaitingPassengers;
+    private int step;
+
+    // Deadlines after which passengers give up waiting.
+    private final TimingWheel patienceTimers;
+    // Patience timers of passengers whose vehicle is on its way.
+    private final Map<Vehicle, Integer> pickupTimers;
+    private int passengerPatience;
+    private int totalAbandoned;
+
+    // The number of vehicles not free, kept up to date as they are
+    // assigned and released.
+    private int busyVehicles;
+    // Rolling figures over recent steps.
+    private final List<KpiWindow> kpiWindows;
+    // Told as the running figures change.
+    private final List<StatsListener> statsListeners;
+
+    // Pickup and drop-off times of assigned passengers, and estimates for others.
+    private final EtaService etaService;
+
+    // Matches requests to taxis already carrying passengers, if taxis share.
+    private RidePool ridePool;
+    private int totalPooled;
+    // The slots of waiting passengers seated in shared taxis this step.
+    private int[] pooledSlots;
+
+    // Completed trips, if they are being kept.
+    private TripHistory tripHistory;
+    // Per vehicle id: when its current passenger requested and was picked up.
+    private int[] tripRequestSteps;
+    private int[] tripPickupSteps;
+
+    private final int numberOfTaxis;
+    private final long seed;
+    // Whether vehicles print their movements.
+    private boolean movementLogged;
 
     /**
      * Create a TaxiCompany operating in the given city.
@@ -21,21 +69,57 @@ public class TaxiCompany {
      * @throws IllegalArgumentException if city is null.
      */
     public TaxiCompany(City city) {
+        this(city, NUMBER_OF_TAXIS, 12345, RequestQueue.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a TaxiCompany with a given fleet size operating in the given city.
+     *
+     * @param city          The city where the company operates.
+     * @param numberOfTaxis The number of taxis in the fleet.
+     * @param seed          The seed used to place the taxis.
+     * @param queueCapacity The most pickup requests that may wait for dispatch.
+     * @throws IllegalArgumentException if city is null, the fleet size is negative
+     *                                  or the queue capacity is not positive.
+     */
+    public TaxiCompany(City city, int numberOfTaxis, long seed, int queueCapacity) {
         if (city == null) {
             throw new IllegalArgumentException("City cannot be null");
         }
+        if (numberOfTaxis < 0) {
+            throw new IllegalArgumentException("Number of taxis cannot be negative");
+        }
         this.city = city;
-        vehicles = new LinkedList<>();
+        this.numberOfTaxis = numberOfTaxis;
+        this.seed = seed;
+        movementLogged = true;
+        vehicles = new ArrayList<>(numberOfTaxis);
         assignments = new HashMap<>();
+        requests = new RequestQueue(queueCapacity);
+        dispatchBatch = new ArrayList<>(DISPATCH_BATCH_SIZE);
+        waitingPassengers = new PassengerStore();
+        patienceTimers = new TimingWheel();
+        pickupTimers = new HashMap<>();
+        kpiWindows = new ArrayList<>();
+        statsListeners = new ArrayList<>();
+        pooledSlots = new int[16];
         setupVehicles();
+        etaService = new EtaService(city.getWidth(), city.getHeight(), vehicles);
+        tripRequestSteps = new int[vehicles.size()];
+        tripPickupSteps = new int[vehicles.size()];
     }
 
     public void incrementPickups() {
         totalPickups++;
+        fireStatChanged(Statistic.PICKUPS, 1);
+        for (KpiWindow window : kpiWindows) {
+            window.recordPickup();
+        }
     }
 
     public void incrementDropoffs() {
         totalDropoffs++;
+        fireStatChanged(Statistic.DROPOFFS, 1);
     }
 
     public int getTotalPickups() {
@@ -47,36 +131,497 @@ public class TaxiCompany {
     }
 
     /**
-     * @return The number of taxis currently carrying passengers.
+     * @return The number of passengers who gave up before a vehicle arrived.
+     */
+    public int getTotalAbandoned() {
+        return totalAbandoned;
+    }
+
+    /**
+     * @return The number of steps passengers wait before giving up, or 0
+     * if they wait forever.
+     */
+    public int getPassengerPatience() {
+        return passengerPatience;
+    }
+
+    /**
+     * Set how many steps after their request passengers give up waiting for
+     * a vehicle to arrive. Applies to requests made from now on.
+     *
+     * @param passengerPatience The patience in steps, or 0 to wait forever.
+     * @throws IllegalArgumentException if the patience is negative.
+     */
+    public void setPassengerPatience(int passengerPatience) {
+        if (passengerPatience < 0) {
+            throw new IllegalArgumentException("Patience cannot be negative");
+        }
+        this.passengerPatience = passengerPatience;
+    }
+
+    /**
+     * @return Whether vehicles print their movements.
+     */
+    public boolean isMovementLogged() {
+        return movementLogged;
+    }
+
+    /**
+     * Turn the printing of vehicle movements on or off. Large fleets
+     * should run with logging off.
+     *
+     * @param movementLogged Whether vehicles print their movements.
+     */
+    public void setMovementLogged(boolean movementLogged) {
+        this.movementLogged = movementLogged;
+    }
+
+    /**
+     * @return The number of taxis currently heading for or carrying passengers.
      */
     public int getActiveTaxiCount() {
-        int count = 0;
-        for (Vehicle v : vehicles) {
-            if (!v.isFree()) {
-                count++;
+        return busyVehicles;
+    }
+
+    /**
+     * Start keeping pickups, missed requests and utilisation over a sliding
+     * window of recent steps. Any number of windows may be kept at once.
+     *
+     * @param steps   The length of the window in steps.
+     * @param buckets The number of buckets the window is divided into.
+     * @return The window, which is kept up to date as the simulation runs.
+     * @throws IllegalArgumentException if either value is not positive.
+     */
+    public KpiWindow addKpiWindow(int steps, int buckets) {
+        KpiWindow window = new KpiWindow(steps, buckets);
+        window.advanceTo(step);
+        kpiWindows.add(window);
+        return window;
+    }
+
+    /**
+     * @return The sliding windows being kept, in the order they were added.
+     */
+    public List<KpiWindow> getKpiWindows() {
+        return Collections.unmodifiableList(kpiWindows);
+    }
+
+    /**
+     * @return The service answering when vehicles will reach passengers.
+     */
+    public EtaService getEtaService() {
+        return etaService;
+    }
+
+    /**
+     * @return The history completed trips are added to, or null if none.
+     */
+    public TripHistory getTripHistory() {
+        return tripHistory;
+    }
+
+    /**
+     * Keep every completed trip in a history. The company does not close it.
+     *
+     * @param tripHistory The history, or null to stop keeping trips.
+     */
+    public void setTripHistory(TripHistory tripHistory) {
+        this.tripHistory = tripHistory;
+    }
+
+    /**
+     * Let taxis carry more than one passenger at once. A request that finds
+     * no free taxi may then join a taxi already carrying passengers, if the
+     * taxi can reach the new passenger within the wait limit and sharing
+     * adds no more than the detour limit to any passenger's ride. Passengers
+     * who join a trip do not give up waiting. Must be called before the
+     * simulation starts.
+     *
+     * @param seats  The most passengers a taxi carries at once; 1 turns sharing off.
+     * @param detour The most steps sharing may add to any passenger's ride.
+     * @param wait   The most steps a passenger joining a taxi waits for it.
+     * @throws IllegalArgumentException if seats is not positive or either limit is negative.
+     */
+    public void setPooling(int seats, int detour, int wait) {
+        if (seats < 1) {
+            throw new IllegalArgumentException("Seats must be positive");
+        }
+        ridePool = seats == 1 ? null
+                : new RidePool(city.getWidth(), city.getHeight(), vehicles.size(), seats, detour, wait, etaService);
+        for (Vehicle vehicle : vehicles) {
+            if (vehicle instanceof Taxi) {
+                ((Taxi) vehicle).setSeats(seats);
             }
         }
-        return count;
     }
 
     /**
-     * Request a pickup for the given passenger.
+     * @return The pool matching requests to shared taxis, or null if taxis do not share.
+     */
+    public RidePool getRidePool() {
+        return ridePool;
+    }
+
+    /**
+     * @return The number of passengers who joined a taxi already carrying others.
+     */
+    public int getTotalPooled() {
+        return totalPooled;
+    }
+
+    /**
+     * Seat a passenger in a taxi already on a trip, if one can take them.
+     *
+     * @param passenger   The passenger.
+     * @param requestStep The step in which the passenger requested a pickup.
+     * @return The taxi, or null if none can.
+     */
+    private Vehicle pool(Passenger passenger, int requestStep) {
+        Taxi taxi = ridePool.match(passenger, requestStep, step);
+        if (taxi != null) {
+            totalPooled++;
+        }
+        return taxi;
+    }
+
+    /**
+     * Tell a listener about every change to the company's pickups,
+     * drop-offs, abandoned passengers and active taxis from now on.
+     *
+     * @param listener The listener (must not be null).
+     * @throws NullPointerException if listener is null.
+     */
+    public void addStatsListener(StatsListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("Listener must not be null.");
+        }
+        statsListeners.add(listener);
+    }
+
+    /**
+     * Tell every listener that a figure has changed.
+     *
+     * @param statistic The figure.
+     * @param delta     How much it changed by.
+     */
+    private void fireStatChanged(Statistic statistic, int delta) {
+        for (StatsListener listener : statsListeners) {
+            listener.statChanged(statistic, delta);
+        }
+    }
+
+    /**
+     * Record a request that was turned away or abandoned in every window.
+     */
+    private void recordMissed() {
+        for (KpiWindow window : kpiWindows) {
+            window.recordMissed();
+        }
+    }
+
+    /**
+     * Request a pickup for the given passenger, at standard priority.
      *
      * @param passenger The passenger requesting pickup.
-     * @return true if a free vehicle was assigned, false otherwise.
+     * @return true if a free vehicle was assigned or the passenger joined a
+     * shared taxi, false otherwise.
      * @throws IllegalArgumentException if passenger is null.
      */
     public boolean requestPickup(Passenger passenger) {
+        return requestPickup(passenger, RequestPriority.STANDARD);
+    }
+
+    /**
+     * Request a pickup for the given passenger. The priority is recorded
+     * with the dispatch; with no queue to wait in, it does not change which
+     * vehicle is sent.
+     *
+     * @param passenger The passenger requesting pickup.
+     * @param priority  The priority of the request.
+     * @return true if a free vehicle was assigned or the passenger joined a
+     * shared taxi, false otherwise.
+     * @throws IllegalArgumentException if passenger or priority is null.
+     */
+    public boolean requestPickup(Passenger passenger, RequestPriority priority) {
         if (passenger == null) {
             throw new IllegalArgumentException("Passenger cannot be null");
         }
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority cannot be null");
+        }
+        DispatchEvent event = new DispatchEvent();
+        event.begin();
         Vehicle vehicle = scheduleVehicle();
         if (vehicle != null) {
-            assignments.put(vehicle, passenger);
-            vehicle.setPickupLocation(passenger.getPickupLocation());
-            return true;
+            assign(vehicle, passenger, step);
+        } else if (ridePool != null) {
+            vehicle = pool(passenger, step);
         }
-        return false;
+        commitDispatchEvent(event, vehicle, passenger.getPickupLocation(), step, priority);
+        return vehicle != null;
+    }
+
+    /**
+     * Send a vehicle to pick up a passenger, starting the passenger's
+     * patience timer if they have limited patience.
+     *
+     * @param vehicle     A free vehicle.
+     * @param passenger   The passenger to pick up.
+     * @param requestStep The step in which the passenger requested a pickup.
+     */
+    private void assign(Vehicle vehicle, Passenger passenger, int requestStep) {
+        assignments.put(vehicle, passenger);
+        vehicle.setPickupLocation(passenger.getPickupLocation());
+        busyVehicles++;
+        fireStatChanged(Statistic.ACTIVE_TAXIS, 1);
+        tripRequestSteps[vehicle.getId()] = requestStep;
+        etaService.vehicleAssigned(vehicle, passenger);
+        if (passengerPatience > 0) {
+            // Assigned passengers are identified to the timer by vehicle.
+            int timer = patienceTimers.schedule((long) requestStep + passengerPatience, -1 - vehicle.getId());
+            pickupTimers.put(vehicle, timer);
+        }
+    }
+
+    /**
+     * @return The queue through which producers request pickups.
+     */
+    public RequestQueue getRequestQueue() {
+        return requests;
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Set the current step of the simulation. Called at the start of each step.
+     *
+     * @param step The current step.
+     */
+    public void setStep(int step) {
+        this.step = step;
+        etaService.setStep(step);
+        for (KpiWindow window : kpiWindows) {
+            window.advanceTo(step);
+            window.recordBusyVehicles(busyVehicles);
+        }
+    }
+
+    /**
+     * @return The most passengers that may wait for a vehicle to become free.
+     */
+    public int getMaxWaitingPassengers() {
+        return maxWaitingPassengers;
+    }
+
+    /**
+     * Set how many passengers may wait for a vehicle to become free when
+     * none is available. With none, such passengers are rejected at once.
+     *
+     * @param maxWaitingPassengers The most passengers that may wait.
+     * @throws IllegalArgumentException if the number is negative.
+     */
+    public void setMaxWaitingPassengers(int maxWaitingPassengers) {
+        if (maxWaitingPassengers < 0) {
+            throw new IllegalArgumentException("Waiting passengers cannot be negative");
+        }
+        this.maxWaitingPassengers = maxWaitingPassengers;
+    }
+
+    /**
+     * @return The number of passengers waiting for a vehicle to become free.
+     */
+    public int getWaitingPassengerCount() {
+        return waitingPassengers.size();
+    }
+
+    /**
+     * @return The passengers waiting for a vehicle to become free, in the
+     * order they will be served. The list is a copy.
+     */
+    public List<Passenger> getWaitingPassengers() {
+        int[] slots = waitingPassengers.slotsInOrder();
+        List<Passenger> passengers = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            passengers.add(waitingPassengers.materialise(slot));
+        }
+        return passengers;
+    }
+
+    /**
+     * Dispatch the requests in the queue in batches, oldest first.
+     * <p>
+     * If passengers may not wait, each request is assigned a free vehicle
+     * or rejected in turn. Otherwise requests join the waiting passengers,
+     * if there is room, and free vehicles are assigned to waiting
+     * passengers by priority, before and after the new requests arrive.
+     * A passenger who is assigned a vehicle is added to the city. When a
+     * request is rejected, its producer is told. Requests published while
+     * dispatching wait for the next step.
+     *
+     * @throws IllegalStateException if a producer publishing into the queue has failed.
+     */
+    public void dispatchPendingRequests() {
+        requests.checkProducers();
+        patienceTimers.advance(step, this::patienceExpired);
+        dispatchWaitingPassengers(false);
+        int remaining = requests.getDepth();
+        while (remaining > 0) {
+            int drained = requests.drainTo(dispatchBatch, Math.min(remaining, DISPATCH_BATCH_SIZE));
+            if (drained == 0) {
+                break;
+            }
+            remaining -= drained;
+            for (PickupRequest request : dispatchBatch) {
+                Passenger passenger = request.getPassenger();
+                request.getProducer().requestTaken(passenger);
+                if (maxWaitingPassengers == 0 && requestPickup(passenger, request.getPriority())) {
+                    city.addItem(passenger);
+                } else if (waitingPassengers.size() < maxWaitingPassengers) {
+                    int slot = waitingPassengers.add(passenger.getPickupLocation(), passenger.getDestination(),
+                            step, request.getPriority());
+                    if (passengerPatience > 0) {
+                        // Waiting passengers are identified to the timer by slot.
+                        waitingPassengers.setTimer(slot, patienceTimers.schedule((long) step + passengerPatience, slot));
+                    }
+                } else {
+                    request.getProducer().requestRejected(passenger);
+                    recordMissed();
+                }
+                requests.recordDispatched(request);
+            }
+            dispatchBatch.clear();
+        }
+        dispatchWaitingPassengers(true);
+    }
+
+    /**
+     * Assign free vehicles to waiting passengers, highest priority first,
+     * until either runs out. If taxis share, waiting passengers who find no
+     * free vehicle may then join shared taxis instead.
+     *
+     * @param pool Whether to offer shared taxis; done once a step, once the
+     *             step's new requests are waiting.
+     */
+    private void dispatchWaitingPassengers(boolean pool) {
+        while (!waitingPassengers.isEmpty()) {
+            DispatchEvent event = new DispatchEvent();
+            event.begin();
+            Vehicle vehicle = scheduleVehicle();
+            int slot = waitingPassengers.first();
+            int requestStep = waitingPassengers.getRequestStep(slot);
+            RequestPriority priority = waitingPassengers.getPriority(slot);
+            Location pickup = new Location(waitingPassengers.getPickupX(slot), waitingPassengers.getPickupY(slot));
+            if (vehicle == null) {
+                commitDispatchEvent(event, null, pickup, requestStep, priority);
+                if (pool && ridePool != null) {
+                    poolWaitingPassengers();
+                }
+                return;
+            }
+            Passenger passenger = waitingPassengers.materialise(slot);
+            patienceTimers.cancel(waitingPassengers.getTimer(slot));
+            waitingPassengers.remove(slot);
+            assign(vehicle, passenger, requestStep);
+            city.addItem(passenger);
+            commitDispatchEvent(event, vehicle, pickup, requestStep, priority);
+        }
+    }
+
+    /**
+     * Offer waiting passengers, highest priority first, a seat in a shared
+     * taxi. Called when no vehicle is free.
+     * <p>
+     * Only the passengers with a shared taxi near their pickup are walked,
+     * in the order they will be served, and each is tried on the
+     * coordinates held for them: a passenger is only made into an object
+     * once a taxi is found. Shared taxis do not move while this runs and
+     * a booking never brings one nearer anyone, so no one left out could
+     * have been seated.
+     */
+    private void poolWaitingPassengers() {
+        if (ridePool.isEmpty()) {
+            return;
+        }
+        int seated = 0;
+        // The walk needs the queue unchanged, so seated passengers leave it afterwards.
+        waitingPassengers.startWalk(slot -> ridePool.hasTaxiNear(
+                waitingPassengers.getPickupX(slot), waitingPassengers.getPickupY(slot)));
+        for (int slot = waitingPassengers.nextInWalk(); slot != -1; slot = waitingPassengers.nextInWalk()) {
+            DispatchEvent event = new DispatchEvent();
+            event.begin();
+            Taxi taxi = ridePool.find(waitingPassengers.getPickupX(slot), waitingPassengers.getPickupY(slot),
+                    waitingPassengers.getDestinationX(slot), waitingPassengers.getDestinationY(slot), step);
+            if (taxi != null) {
+                int requestStep = waitingPassengers.getRequestStep(slot);
+                Passenger passenger = waitingPassengers.materialise(slot);
+                ridePool.book(passenger, requestStep, step);
+                totalPooled++;
+                patienceTimers.cancel(waitingPassengers.getTimer(slot));
+                if (seated == pooledSlots.length) {
+                    pooledSlots = Arrays.copyOf(pooledSlots, seated * 2);
+                }
+                pooledSlots[seated++] = slot;
+                city.addItem(passenger);
+                commitDispatchEvent(event, taxi, passenger.getPickupLocation(), requestStep,
+                        waitingPassengers.getPriority(slot));
+            }
+        }
+        for (int i = 0; i < seated; i++) {
+            waitingPassengers.remove(pooledSlots[i]);
+        }
+    }
+
+    /**
+     * Fill in and commit a dispatch event, if it is being recorded.
+     *
+     * @param event       The event, begun before the search for a vehicle.
+     * @param vehicle     The vehicle assigned, or null if none was free.
+     * @param pickup      The passenger's pickup location.
+     * @param requestStep The step in which the passenger requested a pickup.
+     * @param priority    The priority of the request.
+     */
+    private void commitDispatchEvent(DispatchEvent event, Vehicle vehicle, Location pickup,
+                                     int requestStep, RequestPriority priority) {
+        if (event.shouldCommit()) {
+            event.step = step;
+            event.vehicleId = vehicle == null ? -1 : vehicle.getId();
+            event.pickupX = pickup.getX();
+            event.pickupY = pickup.getY();
+            event.requestStep = requestStep;
+            event.priority = priority.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * A passenger has run out of patience. If they are still waiting for a
+     * vehicle to become free they leave the queue; if a vehicle is on its
+     * way it is called off and the passenger leaves the city.
+     *
+     * @param payload The passenger's waiting slot, or -1 minus the id of
+     *                the vehicle sent to them.
+     */
+    private void patienceExpired(int payload) {
+        if (payload >= 0) {
+            waitingPassengers.remove(payload);
+        } else {
+            Vehicle vehicle = vehicles.get(-1 - payload);
+            pickupTimers.remove(vehicle);
+            Passenger passenger = assignments.remove(vehicle);
+            city.removeItem(passenger);
+            vehicle.cancelPickup();
+            etaService.pickupCancelled(vehicle, passenger);
+            busyVehicles--;
+            fireStatChanged(Statistic.ACTIVE_TAXIS, -1);
+        }
+        totalAbandoned++;
+        fireStatChanged(Statistic.ABANDONED, 1);
+        recordMissed();
     }
 
     /**
@@ -103,13 +648,70 @@ public class TaxiCompany {
         if (vehicle == null) {
             throw new IllegalArgumentException("Vehicle cannot be null");
         }
+        PickupEvent event = new PickupEvent();
+        event.begin();
         Passenger passenger = assignments.remove(vehicle);
         if (passenger == null) {
             throw new MissingPassengerException(vehicle);
         }
+        Integer timer = pickupTimers.remove(vehicle);
+        if (timer != null) {
+            patienceTimers.cancel(timer);
+        }
         city.removeItem(passenger);
         vehicle.pickup(passenger);
+        tripPickupSteps[vehicle.getId()] = step;
+        etaService.passengerPickedUp(vehicle, passenger);
+        if (ridePool != null) {
+            ridePool.tripStarted((Taxi) vehicle, passenger, tripRequestSteps[vehicle.getId()], step);
+        }
+        incrementPickups();
+        if (event.shouldCommit()) {
+            event.step = step;
+            event.vehicleId = vehicle.getId();
+            event.x = passenger.getPickupLocation().getX();
+            event.y = passenger.getPickupLocation().getY();
+            event.commit();
+        }
+    }
+
+    /**
+     * Called when a shared taxi picks up a passenger who joined its trip.
+     *
+     * @param vehicle   The taxi.
+     * @param passenger The passenger.
+     * @throws IllegalArgumentException if either is null.
+     */
+    public void arrivedAtPooledPickup(Vehicle vehicle, Passenger passenger) {
+        if (vehicle == null) {
+            throw new IllegalArgumentException("Vehicle cannot be null");
+        }
+        if (passenger == null) {
+            throw new IllegalArgumentException("Passenger cannot be null");
+        }
+        PickupEvent event = new PickupEvent();
+        event.begin();
+        city.removeItem(passenger);
+        ridePool.pickedUp(passenger, step);
         incrementPickups();
+        if (event.shouldCommit()) {
+            event.step = step;
+            event.vehicleId = vehicle.getId();
+            event.x = passenger.getPickupLocation().getX();
+            event.y = passenger.getPickupLocation().getY();
+            event.commit();
+        }
+    }
+
+    /**
+     * Called when a vehicle moves, so shared taxis can be found by where they are.
+     *
+     * @param vehicle The vehicle.
+     */
+    public void vehicleMoved(Vehicle vehicle) {
+        if (ridePool != null) {
+            ridePool.moved((Taxi) vehicle);
+        }
     }
 
     /**
@@ -126,7 +728,35 @@ public class TaxiCompany {
         if (passenger == null) {
             throw new IllegalArgumentException("Passenger cannot be null");
         }
+        DropoffEvent event = new DropoffEvent();
+        event.begin();
         incrementDropoffs();
+        if (vehicle.isFree()) {
+            busyVehicles--;
+            fireStatChanged(Statistic.ACTIVE_TAXIS, -1);
+        }
+        etaService.passengerDroppedOff(vehicle, passenger);
+        int id = vehicle.getId();
+        int requestStep = tripRequestSteps[id];
+        int pickupStep = tripPickupSteps[id];
+        if (ridePool != null) {
+            requestStep = ridePool.getRequestStep(passenger);
+            pickupStep = ridePool.getPickupStep(passenger);
+            ridePool.droppedOff((Taxi) vehicle, passenger);
+        }
+        if (tripHistory != null) {
+            Location pickup = passenger.getPickupLocation();
+            Location destination = passenger.getDestination();
+            tripHistory.append(id, requestStep, pickupStep, step,
+                    pickup.getX(), pickup.getY(), destination.getX(), destination.getY());
+        }
+        if (event.shouldCommit()) {
+            event.step = step;
+            event.vehicleId = vehicle.getId();
+            event.x = passenger.getDestination().getX();
+            event.y = passenger.getDestination().getY();
+            event.commit();
+        }
     }
 
     /**
@@ -152,16 +782,29 @@ public class TaxiCompany {
 
     /**
      * Set up the company's vehicles at random locations within the city.
+     * Each vehicle is placed by its own random stream, so its location
+     * depends only on the seed and its id, and large fleets can be created
+     * in parallel with the same result. The fleet is then added to the
+     * city in one pass.
      */
     private void setupVehicles() {
         int cityWidth = city.getWidth();
         int cityHeight = city.getHeight();
-        Random rand = new Random(12345);
+        RandomStreams streams = new RandomStreams(seed);
 
-        for (int i = 0; i < NUMBER_OF_TAXIS; i++) {
-            Taxi taxi = new Taxi(this, new Location(rand.nextInt(cityWidth), rand.nextInt(cityHeight)));
-            vehicles.add(taxi);
-            city.addItem(taxi);
+        IntStream ids = IntStream.range(0, numberOfTaxis);
+        if (numberOfTaxis >= PARALLEL_SETUP_THRESHOLD) {
+            ids = ids.parallel();
         }
+        Taxi[] fleet = ids.mapToObj(id -> {
+            SplittableRandom rand = streams.stream("vehicle", id);
+            Taxi taxi = new Taxi(this, new Location(rand.nextInt(cityWidth), rand.nextInt(cityHeight)));
+            taxi.setId(id);
+            return taxi;
+        }).toArray(Taxi[]::new);
+
+        List<Taxi> taxis = Arrays.asList(fleet);
+        vehicles.addAll(taxis);
+        city.addItems(taxis);
     }
 }
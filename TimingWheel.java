@@ -0,0 +1,244 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A hierarchical timing wheel of timers that expire at a given step.
+ * <p>
+ * There are four wheels of 256 slots. The first holds timers due within
+ * the current block of 256 steps, one slot per step; each further wheel
+ * covers a block 256 times longer. When the first wheel completes a turn,
+ * the timers in the next slot of the second wheel are spread over it, and
+ * so on up the hierarchy. Scheduling and cancelling a timer are O(1), and
+ * advancing a step only touches the timers that expire or move down a
+ * wheel, however many are pending.
+ * <p>
+ * Timers are kept in primitive arrays and identified by int handles. Each
+ * carries an int payload that is passed back when it expires. A handle is
+ * reused once its timer has expired or been cancelled, so callers must
+ * forget it at that point.
+ */
+public class TimingWheel {
+    public static final int NONE = -1;
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The first timer in each slot of each wheel.
+    private final int[] heads;
+    // Per timer: deadline, payload, list links and the slot it is in.
+    private long[] deadlines;
+    private int[] payloads;
+    private int[] previous;
+    private int[] next;
+    private int[] slotOf;
+    private int freeTimers;
+    private int used;
+    private int size;
+    private long currentStep;
+
+    /**
+     * Create an empty timing wheel at step 0.
+     */
+    public TimingWheel() {
+        this(0);
+    }
+
+    /**
+     * Create an empty timing wheel.
+     *
+     * @param currentStep The step the wheel starts at.
+     */
+    public TimingWheel(long currentStep) {
+        this.currentStep = currentStep;
+        heads = new int[LEVELS * SLOTS];
+        Arrays.fill(heads, NONE);
+        deadlines = new long[INITIAL_CAPACITY];
+        payloads = new int[INITIAL_CAPACITY];
+        previous = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        slotOf = new int[INITIAL_CAPACITY];
+        freeTimers = NONE;
+    }
+
+    /**
+     * Schedule a timer. A deadline that has already passed expires at the
+     * next step.
+     *
+     * @param deadline The step at which the timer expires.
+     * @param payload  The value passed back when the timer expires.
+     * @return The timer's handle.
+     * @throws IllegalArgumentException if the deadline is beyond the wheel's range.
+     */
+    public int schedule(long deadline, int payload) {
+        if (deadline <= currentStep) {
+            deadline = currentStep + 1;
+        }
+        if (deadline - currentStep >= 1L << (SLOT_BITS * LEVELS)) {
+            throw new IllegalArgumentException("Deadline too far ahead: " + deadline);
+        }
+        int timer = allocate();
+        deadlines[timer] = deadline;
+        payloads[timer] = payload;
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Cancel a pending timer.
+     *
+     * @param timer The timer's handle.
+     * @return true if the timer was pending, false if it had already expired
+     * or been cancelled.
+     */
+    public boolean cancel(int timer) {
+        if (timer < 0 || timer >= used || slotOf[timer] == NONE) {
+            return false;
+        }
+        unlink(timer);
+        release(timer);
+        return true;
+    }
+
+    /**
+     * Advance the wheel to a given step, passing the payload of every timer
+     * that expires on the way to a handler, in order of deadline.
+     * The handler may schedule and cancel timers.
+     *
+     * @param step    The step to advance to.
+     * @param expired The handler for expired timers.
+     */
+    public void advance(long step, IntConsumer expired) {
+        while (currentStep < step) {
+            if (size == 0) {
+                currentStep = step;
+                return;
+            }
+            currentStep++;
+            cascade();
+            int slot = (int) (currentStep & SLOT_MASK);
+            while (heads[slot] != NONE) {
+                int timer = heads[slot];
+                int payload = payloads[timer];
+                unlink(timer);
+                release(timer);
+                expired.accept(payload);
+            }
+        }
+    }
+
+    /**
+     * @return The number of pending timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The step the wheel has advanced to.
+     */
+    public long getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * @param timer A pending timer's handle.
+     * @return The step at which the timer expires.
+     */
+    public long getDeadline(int timer) {
+        return deadlines[timer];
+    }
+
+    /**
+     * When a wheel completes a turn, move the timers in the next slot of the
+     * wheel above down the hierarchy. Higher wheels are cascaded first, since
+     * their timers may land in the slot of a lower wheel that is due next.
+     */
+    private void cascade() {
+        int level = 0;
+        while (level + 1 < LEVELS && (currentStep & ((1L << (SLOT_BITS * (level + 1))) - 1)) == 0) {
+            level++;
+        }
+        for (; level > 0; level--) {
+            int list = level * SLOTS + (int) ((currentStep >>> (SLOT_BITS * level)) & SLOT_MASK);
+            int timer = heads[list];
+            heads[list] = NONE;
+            while (timer != NONE) {
+                int following = next[timer];
+                insert(timer);
+                timer = following;
+            }
+        }
+    }
+
+    /**
+     * Put a timer in the slot for its deadline: the lowest wheel whose
+     * current block contains the deadline.
+     */
+    private void insert(int timer) {
+        long deadline = deadlines[timer];
+        int level = 0;
+        while (level < LEVELS - 1
+                && (deadline >>> (SLOT_BITS * (level + 1))) != (currentStep >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int list = level * SLOTS + (int) ((deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+        int head = heads[list];
+        previous[timer] = NONE;
+        next[timer] = head;
+        if (head != NONE) {
+            previous[head] = timer;
+        }
+        heads[list] = timer;
+        slotOf[timer] = list;
+    }
+
+    /**
+     * Take a timer out of its slot's list.
+     */
+    private void unlink(int timer) {
+        int before = previous[timer];
+        int after = next[timer];
+        if (before == NONE) {
+            heads[slotOf[timer]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    /**
+     * Return a timer's handle to the free chain.
+     */
+    private void release(int timer) {
+        slotOf[timer] = NONE;
+        next[timer] = freeTimers;
+        freeTimers = timer;
+        size--;
+    }
+
+    /**
+     * Take a handle from the free chain, or a new one, growing the arrays if
+     * they are full.
+     */
+    private int allocate() {
+        if (freeTimers != NONE) {
+            int timer = freeTimers;
+            freeTimers = next[timer];
+            return timer;
+        }
+        if (used == deadlines.length) {
+            int capacity = deadlines.length * 2;
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+            slotOf = Arrays.copyOf(slotOf, capacity);
+        }
+        return used++;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replay pickup requests from a trace file into a request queue.
+ * <p>
+ * Each line of the trace holds one request as
+ * {@code pickupX,pickupY,destinationX,destinationY}. Blank lines and lines
+ * starting with '#' are ignored. Requests are published as fast as the
+ * queue accepts them, so a long trace is paced by dispatch.
+ * <p>
+ * Replayed passengers are counted by a {@link PassengerSource} as they are
+ * dispatched, as created and, if no taxi is available, as missed, so they
+ * are reported with the passengers the source creates itself.
+ */
+public class TraceRequestProducer implements Runnable, RequestProducer {
+    private final Path trace;
+    private final City city;
+    private final RequestQueue queue;
+    private final PassengerSource source;
+    private final AtomicInteger published;
+    private final AtomicInteger rejected;
+
+    /**
+     * Create a producer replaying the given trace.
+     *
+     * @param trace  The trace file (must not be null).
+     * @param city   The city every location in the trace must lie in (must not be null).
+     * @param queue  The queue to publish into (must not be null).
+     * @param source The source counting the replayed passengers (must not be null).
+     * @throws NullPointerException if any argument is null.
+     */
+    public TraceRequestProducer(Path trace, City city, RequestQueue queue, PassengerSource source) {
+        if (trace == null) {
+            throw new NullPointerException("Trace must not be null.");
+        }
+        if (city == null) {
+            throw new NullPointerException("City must not be null.");
+        }
+        if (queue == null) {
+            throw new NullPointerException("Queue must not be null.");
+        }
+        if (source == null) {
+            throw new NullPointerException("Source must not be null.");
+        }
+        this.trace = trace;
+        this.city = city;
+        this.queue = queue;
+        this.source = source;
+        published = new AtomicInteger();
+        rejected = new AtomicInteger();
+    }
+
+    /**
+     * Publish every request in the trace, stopping early if interrupted.
+     *
+     * @throws UncheckedIOException if the trace cannot be read.
+     * @throws IllegalArgumentException if a line of the trace is malformed or
+     *                                  a location lies outside the city.
+     */
+    public void run() {
+        try (BufferedReader reader = Files.newBufferedReader(trace)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                queue.publish(parse(line), this);
+                published.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            // Shut down while waiting for room in the queue.
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read trace " + trace, e);
+        }
+    }
+
+    /**
+     * Count a replayed passenger taken by the dispatcher as created.
+     *
+     * @param passenger The passenger taken.
+     */
+    public void requestTaken(Passenger passenger) {
+        source.requestReplayed(passenger);
+    }
+
+    /**
+     * Count a request for which no taxi was available, here and as a
+     * missed pickup.
+     *
+     * @param passenger The passenger who could not be picked up.
+     */
+    public void requestRejected(Passenger passenger) {
+        rejected.incrementAndGet();
+        source.requestRejected(passenger);
+    }
+
+    /**
+     * @return The number of requests published so far.
+     */
+    public int getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return The number of requests for which no taxi was available.
+     */
+    public int getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Create the passenger described by a line of the trace.
+     *
+     * @param line The line to parse.
+     * @return The passenger.
+     * @throws IllegalArgumentException if the line is malformed or a
+     *                                  location lies outside the city.
+     */
+    private Passenger parse(String line) {
+        String[] fields = line.split(",");
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Expected 4 fields in trace line: " + line);
+        }
+        int[] values = new int[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = Integer.parseInt(fields[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in trace line: " + line);
+        }
+        for (int i = 0; i < values.length; i += 2) {
+            if (values[i] < 0 || values[i] >= city.getWidth()
+                    || values[i + 1] < 0 || values[i + 1] >= city.getHeight()) {
+                throw new IllegalArgumentException("Location outside the " + city.getWidth() + " by "
+                        + city.getHeight() + " city in trace line: " + line);
+            }
+        }
+        return new Passenger(new Location(values[0], values[1]), new Location(values[2], values[3]));
+    }
+}
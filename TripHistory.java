@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * An append-only history of completed trips, held off the Java heap.
+ * <p>
+ * Each trip is a fixed 40-byte record: the vehicle's id, the steps at which
+ * the trip was requested, picked up and dropped off, the pickup and
+ * destination coordinates, and the number of the same vehicle's previous
+ * trip. Records live in {@link MemorySegment} chunks of a million records,
+ * either memory-mapped from a file or allocated in native memory, so the
+ * history can grow to billions of trips without adding to the heap or to
+ * the work of the garbage collector. Trips are numbered from 0 in the order
+ * they were added.
+ * <p>
+ * A scan of all trips reads the chunks in order. The trips of one vehicle
+ * are found by following the chain of previous-trip numbers back from its
+ * latest trip, so they cost one record read each however long the history.
+ * <p>
+ * Trips are appended by a single thread. Other threads may read the history
+ * while it grows, including one vehicle's trips; they see every trip up to
+ * the size they last read, and every trip of a vehicle up to the latest one
+ * they find for it.
+ * <p>
+ * A history file starts with a 64-byte header holding the magic number,
+ * the format version and the number of trips, followed by the records.
+ * All values are little-endian. Closing the history trims the file to its
+ * trips, and reopening a file carries on appending to it.
+ */
+public final class TripHistory implements AutoCloseable {
+    public static final int RECORD_BYTES = 40;
+    public static final long NONE = -1;
+    static final int MAGIC = 0x54525048;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    private static final int CHUNK_RECORDS = 1 << 20;
+    private static final long CHUNK_BYTES = (long) CHUNK_RECORDS * RECORD_BYTES;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LATEST_TRIP = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Offsets of the fields within a record.
+    private static final long VEHICLE = 0;
+    private static final long REQUEST_STEP = 4;
+    private static final long PICKUP_STEP = 8;
+    private static final long DROPOFF_STEP = 12;
+    private static final long PICKUP_X = 16;
+    private static final long PICKUP_Y = 20;
+    private static final long DESTINATION_X = 24;
+    private static final long DESTINATION_Y = 28;
+    private static final long PREVIOUS = 32;
+
+    private final Arena arena;
+    // The file backing the history, or null if it is held in memory.
+    private final FileChannel channel;
+    private final MemorySegment header;
+    // Replaced rather than changed when a chunk is added, for readers.
+    private volatile MemorySegment[] chunks;
+    private volatile long size;
+    // The latest trip of each vehicle, indexed by vehicle id. Replaced
+    // rather than changed when it grows, and each entry is written with
+    // release semantics after its trip, for readers.
+    private volatile long[] latestTrips;
+    private boolean closed;
+
+    /**
+     * Create an empty history held in native memory.
+     */
+    public TripHistory() {
+        arena = Arena.ofShared();
+        channel = null;
+        header = arena.allocate(HEADER_BYTES, Long.BYTES);
+        chunks = new MemorySegment[0];
+        latestTrips = new long[0];
+        writeHeader();
+    }
+
+    /**
+     * Open a history file, creating it if it does not exist.
+     * Reopening a file reads it through once to find each vehicle's
+     * latest trip.
+     *
+     * @param file The history file.
+     * @throws IOException If the file cannot be opened or is not a trip history.
+     */
+    public TripHistory(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        arena = Arena.ofShared();
+        boolean existing = channel.size() > 0;
+        try {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES, arena);
+            chunks = new MemorySegment[0];
+            latestTrips = new long[0];
+            if (existing) {
+                long trips = header.get(LONG, 8);
+                if (header.get(INT, 0) != MAGIC || header.get(INT, 4) != VERSION || trips < 0) {
+                    throw new IOException(file + " is not a trip history file");
+                }
+                while ((long) chunks.length * CHUNK_RECORDS < trips) {
+                    addChunk();
+                }
+                for (long trip = 0; trip < trips; trip++) {
+                    setLatestTrip(getVehicleId(trip), trip);
+                }
+                size = trips;
+            } else {
+                writeHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Add a completed trip.
+     *
+     * @param vehicleId    The id of the vehicle that made the trip.
+     * @param requestStep  The step in which the pickup was requested.
+     * @param pickupStep   The step in which the passenger was picked up.
+     * @param dropoffStep  The step in which the passenger was dropped off.
+     * @param pickupX      The x-coordinate of the pickup location.
+     * @param pickupY      The y-coordinate of the pickup location.
+     * @param destinationX The x-coordinate of the destination.
+     * @param destinationY The y-coordinate of the destination.
+     * @return The number of the trip.
+     * @throws IllegalArgumentException if the vehicle id is negative.
+     * @throws IllegalStateException if the history has been closed.
+     * @throws UncheckedIOException if the file cannot be extended.
+     */
+    public long append(int vehicleId, int requestStep, int pickupStep, int dropoffStep,
+                       int pickupX, int pickupY, int destinationX, int destinationY) {
+        if (vehicleId < 0) {
+            throw new IllegalArgumentException("Vehicle id cannot be negative: " + vehicleId);
+        }
+        long trip = size;
+        if (trip == (long) chunks.length * CHUNK_RECORDS) {
+            try {
+                addChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        MemorySegment chunk = chunkOf(trip);
+        long offset = offsetOf(trip);
+        chunk.set(INT, offset + VEHICLE, vehicleId);
+        chunk.set(INT, offset + REQUEST_STEP, requestStep);
+        chunk.set(INT, offset + PICKUP_STEP, pickupStep);
+        chunk.set(INT, offset + DROPOFF_STEP, dropoffStep);
+        chunk.set(INT, offset + PICKUP_X, pickupX);
+        chunk.set(INT, offset + PICKUP_Y, pickupY);
+        chunk.set(INT, offset + DESTINATION_X, destinationX);
+        chunk.set(INT, offset + DESTINATION_Y, destinationY);
+        chunk.set(LONG, offset + PREVIOUS, getLatestTrip(vehicleId));
+        setLatestTrip(vehicleId, trip);
+        size = trip + 1;
+        header.set(LONG, 8, trip + 1);
+        return trip;
+    }
+
+    /**
+     * @return The number of trips in the history. Still answered once the
+     *         history is closed.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Pass the number of every trip, oldest first, to a visitor, which can
+     * read the trip's fields through the getters.
+     *
+     * @param visitor The visitor.
+     */
+    public void forEach(LongConsumer visitor) {
+        long trips = size;
+        for (long trip = 0; trip < trips; trip++) {
+            visitor.accept(trip);
+        }
+    }
+
+    /**
+     * Pass the number of every trip made by one vehicle, newest first, to a
+     * visitor. May be called on any thread while trips are being appended.
+     *
+     * @param vehicleId The vehicle's id.
+     * @param visitor   The visitor.
+     */
+    public void forEachTripOf(int vehicleId, LongConsumer visitor) {
+        long trip = getLatestTrip(vehicleId);
+        while (trip != NONE) {
+            visitor.accept(trip);
+            trip = getPreviousTrip(trip);
+        }
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The id of the vehicle that made the trip.
+     */
+    public int getVehicleId(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + VEHICLE);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The step in which the pickup was requested.
+     */
+    public int getRequestStep(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + REQUEST_STEP);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The step in which the passenger was picked up.
+     */
+    public int getPickupStep(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + PICKUP_STEP);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The step in which the passenger was dropped off.
+     */
+    public int getDropoffStep(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + DROPOFF_STEP);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The x-coordinate of the pickup location.
+     */
+    public int getPickupX(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + PICKUP_X);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The y-coordinate of the pickup location.
+     */
+    public int getPickupY(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + PICKUP_Y);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The x-coordinate of the destination.
+     */
+    public int getDestinationX(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + DESTINATION_X);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The y-coordinate of the destination.
+     */
+    public int getDestinationY(long trip) {
+        return chunkOf(trip).get(INT, offsetOf(trip) + DESTINATION_Y);
+    }
+
+    /**
+     * @param trip A trip number.
+     * @return The number of the same vehicle's previous trip, or {@link #NONE}.
+     */
+    public long getPreviousTrip(long trip) {
+        return chunkOf(trip).get(LONG, offsetOf(trip) + PREVIOUS);
+    }
+
+    /**
+     * Flush a history file to disk, trim it to the trips it holds and
+     * release the history's memory. Only its size can be read afterwards.
+     * Closing a closed history does nothing.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (channel == null) {
+            arena.close();
+            return;
+        }
+        try (channel) {
+            for (MemorySegment chunk : chunks) {
+                chunk.force();
+            }
+            header.force();
+            // Unmapped first: chunks are mapped whole, past the last trip.
+            arena.close();
+            channel.truncate(HEADER_BYTES + size * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Print a summary of a trip history file.
+     *
+     * @param args The history file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java TripHistory <trip history file>");
+            System.exit(2);
+        }
+        try (TripHistory history = new TripHistory(Path.of(args[0]))) {
+            long[] totals = new long[2];
+            history.forEach(trip -> {
+                totals[0] += history.getPickupStep(trip) - history.getRequestStep(trip);
+                totals[1] += history.getDropoffStep(trip) - history.getPickupStep(trip);
+            });
+            long trips = history.size();
+            long vehicles = Arrays.stream(history.latestTrips).filter(trip -> trip != NONE).count();
+            System.out.printf("Trips: %d  Mean wait: %.1f steps  Mean ride: %.1f steps  Vehicles: %d%n",
+                    trips, trips == 0 ? 0.0 : (double) totals[0] / trips,
+                    trips == 0 ? 0.0 : (double) totals[1] / trips, vehicles);
+        }
+    }
+
+    private MemorySegment chunkOf(long trip) {
+        return chunks[(int) (trip / CHUNK_RECORDS)];
+    }
+
+    private static long offsetOf(long trip) {
+        return (trip % CHUNK_RECORDS) * RECORD_BYTES;
+    }
+
+    /**
+     * Map or allocate one more chunk of records.
+     */
+    private void addChunk() throws IOException {
+        MemorySegment chunk;
+        if (channel == null) {
+            chunk = arena.allocate(CHUNK_BYTES, Long.BYTES);
+        } else {
+            long position = HEADER_BYTES + chunks.length * CHUNK_BYTES;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, CHUNK_BYTES, arena);
+        }
+        MemorySegment[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = chunk;
+        chunks = grown;
+    }
+
+    /**
+     * @param vehicleId A vehicle's id.
+     * @return The number of the vehicle's latest trip, or NONE if it has made none.
+     */
+    private long getLatestTrip(int vehicleId) {
+        long[] trips = latestTrips;
+        if (vehicleId < 0 || vehicleId >= trips.length) {
+            return NONE;
+        }
+        return (long) LATEST_TRIP.getAcquire(trips, vehicleId);
+    }
+
+    /**
+     * Record a vehicle's latest trip, once the trip has been written, making
+     * room for the vehicle in the table if need be.
+     */
+    private void setLatestTrip(int vehicleId, long trip) {
+        long[] trips = latestTrips;
+        if (vehicleId >= trips.length) {
+            int oldLength = trips.length;
+            trips = Arrays.copyOf(trips, Math.max(vehicleId + 1, oldLength * 2));
+            Arrays.fill(trips, oldLength, trips.length, NONE);
+            trips[vehicleId] = trip;
+            latestTrips = trips;
+        } else {
+            LATEST_TRIP.setRelease(trips, vehicleId, trip);
+        }
+    }
+
+    private void writeHeader() {
+        header.set(INT, 0, MAGIC);
+        header.set(INT, 4, VERSION);
+        header.set(LONG, 8, 0L);
+    }
+}
@@ -6,6 +6,7 @@ public abstract class Vehicle implements Actor {
     private int pickupTravelTime;
     private int destinationTravelTime;
     private boolean headingForPickup;
+    private int id;
 
     /**
      * Create a new vehicle for the given company at the specified location.
@@ -25,6 +26,7 @@ public abstract class Vehicle implements Actor {
         this.location = location;
         targetLocation = null;
         idleCount = 0;
+        id = -1;
     }
 
     /**
@@ -47,6 +49,28 @@ public abstract class Vehicle implements Actor {
         company.arrivedAtDestination(this, passenger);
     }
 
+    /**
+     * Notify the company that this vehicle has picked up a passenger who is
+     * sharing its trip.
+     *
+     * @param passenger The passenger picked up. Must not be null.
+     * @throws NullPointerException if passenger is null.
+     */
+    public void notifyPooledPickup(Passenger passenger) {
+        if (passenger == null) {
+            throw new NullPointerException("passenger");
+        }
+        company.arrivedAtPooledPickup(this, passenger);
+    }
+
+    /**
+     * Notify the company that this vehicle has moved, for vehicles whose
+     * position it keeps track of.
+     */
+    public void notifyMoved() {
+        company.vehicleMoved(this);
+    }
+
     /**
      * Assign a pickup location to this vehicle.
      * How the vehicle handles this is defined by the subclass.
@@ -75,6 +99,32 @@ public abstract class Vehicle implements Actor {
      */
     public abstract void offloadPassenger();
 
+    /**
+     * Abandon the pickup this vehicle is heading for, because the passenger
+     * has given up waiting. The vehicle becomes free.
+     */
+    public void cancelPickup() {
+        clearTargetLocation();
+    }
+
+    /**
+     * Get the company's identifier for this vehicle.
+     *
+     * @return The vehicle's position in the company's fleet, or -1 if it has none.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Set the company's identifier for this vehicle.
+     *
+     * @param id The vehicle's position in the company's fleet.
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Get the current location of this vehicle.
      *
@@ -143,4 +193,25 @@ public abstract class Vehicle implements Actor {
     public void incrementIdleCount() {
         idleCount++;
     }
+
+    /**
+     * Print a message about this vehicle, if the company logs movements.
+     *
+     * @param message The message to print.
+     */
+    protected void log(String message) {
+        if (isLogged()) {
+            System.out.println(message);
+        }
+    }
+
+    /**
+     * Check whether messages are printed, so that a vehicle need not build
+     * one that would be thrown away.
+     *
+     * @return true if the company logs movements.
+     */
+    protected boolean isLogged() {
+        return company.isMovementLogged();
+    }
 }
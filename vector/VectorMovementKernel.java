@@ -0,0 +1,45 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link MovementKernel} in SIMD lanes, with the JDK's Vector API.
+ * <p>
+ * Whole runs of positions are moved at once, and whether each has arrived
+ * is found with a vector mask. The API is an incubator module, so this
+ * class is kept apart from the other sources and only built and used on
+ * request: compile it with them, and compile and run with
+ * {@code --add-modules jdk.incubator.vector}. Otherwise the kernel moves
+ * positions one at a time.
+ */
+final class VectorMovementKernel implements MovementKernel.Lanes {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    public int move(int[] x, int[] y, int[] targetX, int[] targetY, boolean[] arrived, int count) {
+        int arrivals = 0;
+        int i = 0;
+        int bound = SPECIES.loopBound(count);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector px = IntVector.fromArray(SPECIES, x, i);
+            IntVector py = IntVector.fromArray(SPECIES, y, i);
+            IntVector tx = IntVector.fromArray(SPECIES, targetX, i);
+            IntVector ty = IntVector.fromArray(SPECIES, targetY, i);
+            // The sign of the distance, clamped to -1, 0 or 1, is the step.
+            px = px.add(tx.sub(px).max(-1).min(1));
+            py = py.add(ty.sub(py).max(-1).min(1));
+            px.intoArray(x, i);
+            py.intoArray(y, i);
+            VectorMask<Integer> there = px.compare(VectorOperators.EQ, tx)
+                    .and(py.compare(VectorOperators.EQ, ty));
+            there.intoArray(arrived, i);
+            arrivals += there.trueCount();
+        }
+        // Fewer than a vector's worth are left.
+        return arrivals + MovementKernel.moveScalar(x, y, targetX, targetY, arrived, i, count);
+    }
+
+    public int getLanes() {
+        return SPECIES.length();
+    }
+}